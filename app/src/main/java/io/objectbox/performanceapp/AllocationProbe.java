@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.objectbox.performanceapp;
+
+import android.os.Debug;
+
+/**
+ * Counts the objects and bytes allocated by the benchmark thread during a phase. Allocation counting
+ * makes allocations slower on ART, so this probe is optional and its phase times are not comparable
+ * to runs without it.
+ */
+@SuppressWarnings("deprecation") // Obsolete, but still counts on ART
+public class AllocationProbe implements PhaseProbe {
+
+    private static final String[] COLUMNS = {"alloc-bytes", "alloc-count"};
+
+    @Override
+    public String[] columns() {
+        return COLUMNS;
+    }
+
+    @Override
+    public void begin() {
+        Debug.resetThreadAllocSize();
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+    }
+
+    @Override
+    public void end(long[] values, int offset) {
+        Debug.stopAllocCounting();
+        values[offset] = Debug.getThreadAllocSize();
+        values[offset + 1] = Debug.getThreadAllocCount();
+    }
+}
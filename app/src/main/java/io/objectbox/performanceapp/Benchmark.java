@@ -18,81 +18,177 @@ package io.objectbox.performanceapp;
 
 import android.annotation.SuppressLint;
 import android.os.Build;
-import android.os.SystemClock;
+import android.os.Debug;
 import android.util.Log;
 import android.util.Pair;
 
-import org.greenrobot.essentials.StringUtils;
-import org.greenrobot.essentials.io.FileUtils;
-
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class Benchmark {
     public static final String TAG = "Benchmark";
 
     private final List<Pair<String, String>> fixedColumns = new ArrayList<>();
-    private final List<Pair<String, String>> values = new ArrayList<>();
-    private final File file;
+    /** Columns describing individual runs (e.g. position in the schedule); results only, not summary. */
+    private final Map<String, String> runInfo = new LinkedHashMap<>();
+    private final List<PhaseProbe> probes = new ArrayList<>();
+    private final List<Phase> phases = new ArrayList<>();
+    private final Map<String, Phase> phasesByName = new HashMap<>();
+    /** Names of all registered columns; the index is the column ID. */
+    private final List<String> columnNames = new ArrayList<>();
+    /** How values of a column (by ID) are written, e.g. {@link #FORMAT_MILLIS}. */
+    private byte[] columnFormats = new byte[64];
+    /** UTF-8 encoded names of all registered columns, so the journal can write them without allocating. */
+    private final List<byte[]> columnNameBytes = new ArrayList<>();
+    /** Time samples of all committed runs by column name, in order of first appearance. */
+    private final Map<String, PhaseSamples> samples = new LinkedHashMap<>();
+    private final ResultsWriter results;
+    private final ResultsWriter summary;
+    private final PhaseJournal journal;
     private final SimpleDateFormat dateFormat;
-    private final char separator = '\t';
 
-    private String[] headers;
+    // Values of the current run as column ID/value pairs; formatted on commit. Column -1 marks
+    // unused slots, e.g. latency columns of phases without latencies.
+    private int[] runColumns = new int[256];
+    private long[] runValues = new long[256];
+    private int runValueCount;
+    // Phases of the current run in start order (parents before children) and their value offsets
+    private int[] runPhases = new int[32];
+    private int[] runPhaseOffsets = new int[32];
+    // Offsets of the thread values (see ThreadRecorder) of the phases, or -1 if there are none
+    private int[] runPhaseThreadOffsets = new int[32];
+    // Entities the checksums of the phases (if any) are based on; logged on commit
+    private long[] runPhaseChecksumEntities = new long[32];
+    private int runPhaseCount;
+    private int lastStoppedRunPhase = -1;
+    private final Map<String, Long> lastChecksums = new LinkedHashMap<>();
+    private long runStartMillis;
+    // Whether the current run is journaled (not a warm up or profiling run)
+    private boolean journaling;
+
     private boolean storeThreadTime;
+    private String traceLabel;
+    private long defaultOperations;
+    private double bytesPerOperation;
+    private long stoppedOperations = -1;
+    private PhaseProfiler profiler;
+    private boolean profilingRun;
+    // Depth of the phase currently profiled or -1
+    private int profiledDepth = -1;
+    private final List<File> profileFiles = new ArrayList<>();
+    // Results, summary and all profiles written so far
+    private final List<File> files = new ArrayList<>();
+    private HeapQuiescence heapQuiescence = new HeapQuiescence(HeapQuiescence.DEFAULT_TIMEOUT_MILLIS);
+
+    // Stack of open phases (spans); index 0 is the top level phase
+    private Phase[] openPhases = new Phase[8];
+    private int[] openRunPhases = new int[8];
+    private long[] openThreadTimeNanos = new long[8];
+    private long[] openTimeNanos = new long[8];
+    private LatencyHistogram[] openLatencies = new LatencyHistogram[8];
+    private int[] openGenerations = new int[8];
+    private int depth;
 
-    private boolean started;
-    private long threadTimeMillis;
-    private long timeMillis;
-    private String name;
+    // Recorders of other threads; they register themselves lock-free for the innermost open phase,
+    // identified by its generation
+    private final ThreadLocal<ThreadRecorder> threadRecorders = new ThreadLocal<>();
+    private final ConcurrentLinkedQueue<ThreadRecorder> activeRecorders = new ConcurrentLinkedQueue<>();
+    private final List<ThreadRecorder> phaseRecorders = new ArrayList<>();
+    // Recorders of outer open phases while collecting; reused
+    private final List<ThreadRecorder> outerRecorders = new ArrayList<>();
+    private volatile int generation = NO_PHASE;
+    private int generationCounter;
     private int runs;
     private int warmUpRuns;
 
     @SuppressLint("SimpleDateFormat")
     public Benchmark(File file) {
-        this.file = file;
+        results = new ResultsWriter(file);
+        summary = new ResultsWriter(getSummaryFile(file));
+        journal = new PhaseJournal(getJournalFile(file));
+        files.add(file);
+        files.add(getSummaryFile(file));
         dateFormat = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss");
-        checkForLastHeader(file);
+        recoverJournal();
     }
 
-    private void checkForLastHeader(File file) {
-        String contents = null;
-        try {
-            contents = FileUtils.readUtf8(file);
-        } catch (FileNotFoundException e) {
-            // OK
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        if (contents == null) {
-            return;
-        }
+    /**
+     * The summary file is placed next to the results file, e.g. "ObjectBox-crud-10000-summary.tsv".
+     */
+    static File getSummaryFile(File file) {
+        String name = file.getName();
+        int extensionIndex = name.lastIndexOf('.');
+        String baseName = extensionIndex > 0 ? name.substring(0, extensionIndex) : name;
+        String extension = extensionIndex > 0 ? name.substring(extensionIndex) : "";
+        return new File(file.getParentFile(), baseName + "-summary" + extension);
+    }
 
-        String[] lines = StringUtils.split(contents, '\n');
-        for (int i = lines.length - 1; i >= 0; i--) {
-            String[] columnValues = StringUtils.split(lines[i], separator);
-            if (columnValues.length > 1) {
-                boolean longValueFound = false;
-                for (String value : columnValues) {
-                    try {
-                        Long.parseLong(value);
-                        longValueFound = true;
-                        break;
-                    } catch (NumberFormatException e) {
-                        // OK, header candidate
-                    }
-                }
-                if (!longValueFound) {
-                    headers = columnValues;
-                    break;
-                }
-            }
-        }
+    /**
+     * The journal of the current run is placed next to the results file, e.g.
+     * "ObjectBox-crud-10000-partial.journal"; it only exists while (or if the process died while) a
+     * run is in progress.
+     */
+    static File getJournalFile(File file) {
+        String name = file.getName();
+        int extensionIndex = name.lastIndexOf('.');
+        String baseName = extensionIndex > 0 ? name.substring(0, extensionIndex) : name;
+        return new File(file.getParentFile(), baseName + "-partial.journal");
+    }
+
+    /**
+     * Prefix of the trace section names of phases (see {@link Tracing}), e.g. backend, test type and
+     * entity count. Must be set before any phase is registered or started.
+     */
+    public Benchmark traceLabel(String traceLabel) {
+        this.traceLabel = traceLabel;
+        return this;
+    }
+
+    /**
+     * Operations (e.g. entities) processed by a phase unless given to {@link #stop(long)} or
+     * recorded as latencies. This adds ops/s and µs/op columns to each phase.
+     */
+    public Benchmark operations(long defaultOperations) {
+        this.defaultOperations = defaultOperations;
+        return this;
+    }
+
+    /**
+     * Payload size of an operation for phases stopped without their payload bytes (see
+     * {@link #stop(long, long)}), e.g. the average size of the entities generated so far; may change
+     * between phases. Phases with payload get an MB/s (10^6 bytes) column.
+     */
+    public void setBytesPerOperation(double bytesPerOperation) {
+        this.bytesPerOperation = bytesPerOperation;
+    }
+
+    /**
+     * Profiles selected phases in runs started by {@link #beginProfilingRun()}.
+     */
+    public Benchmark profiler(PhaseProfiler profiler) {
+        this.profiler = profiler;
+        return this;
+    }
+
+    /**
+     * Number of the first run, e.g. if previous runs of the same test were done by another process.
+     */
+    public Benchmark firstRun(int firstRun) {
+        this.runs = firstRun - 1;
+        return this;
     }
 
     public Benchmark warmUpRuns(int warmUpRuns) {
@@ -100,6 +196,26 @@ public class Benchmark {
         return this;
     }
 
+    /**
+     * Makes the next run (until {@link #commit()}) a profiling run: phases selected by the
+     * {@link PhaseProfiler} are profiled and the results of the run are not written or used for the
+     * summary, as profiling distorts times.
+     */
+    public void beginProfilingRun() {
+        if (profiler == null) {
+            throw new IllegalStateException("No profiler set");
+        }
+        profilingRun = true;
+    }
+
+    /**
+     * Upper limit of time to wait for the heap to settle before each top level phase.
+     */
+    public Benchmark heapSettleTimeout(long timeoutMillis) {
+        heapQuiescence = new HeapQuiescence(timeoutMillis);
+        return this;
+    }
+
     public Benchmark enableThreadTime() {
         this.storeThreadTime = true;
         return this;
@@ -110,100 +226,1038 @@ public class Benchmark {
         return this;
     }
 
+    /**
+     * Adds a probe sampled around each top level phase, e.g. {@link GcProbe}. Must be called before
+     * any phase is registered or started.
+     */
+    public Benchmark addProbe(PhaseProbe probe) {
+        if (!phases.isEmpty()) {
+            throw new IllegalStateException("Probes must be added before phases are registered");
+        }
+        probes.add(probe);
+        return this;
+    }
+
     public Benchmark addFixedColumn(String key, String value) {
         fixedColumns.add(new Pair<>(key, value));
         return this;
     }
 
+    /**
+     * Sets a column describing the next run(s), e.g. its position in an interleaved schedule; written
+     * after the run number until changed.
+     */
+    public void setRunInfo(String key, String value) {
+        runInfo.put(key, value);
+    }
+
     public Benchmark addFixedColumnDevice() {
         addFixedColumn("device", Build.MODEL);
         return this;
     }
 
-    public void start(String name) {
-        if (started) {
-            throw new RuntimeException("Already started");
+    /**
+     * Registers a top level phase and all its columns up front, so starting and stopping it does not
+     * allocate. Registering a name again returns the existing ID.
+     */
+    public int registerPhase(String name) {
+        Phase phase = phasesByName.get(name);
+        return phase != null ? phase.id : createPhase(null, name).id;
+    }
+
+    /**
+     * Registers a nested phase (span) of the given parent phase. Its columns are named by path,
+     * e.g. "insert/put".
+     */
+    public int registerPhase(int parentId, String name) {
+        Phase parent = phases.get(parentId);
+        Phase phase = parent.children.get(name);
+        return phase != null ? phase.id : createPhase(parent, name).id;
+    }
+
+    private Phase createPhase(Phase parent, String name) {
+        String path = parent != null ? parent.name + "/" + name : name;
+        int timeColumn = registerColumn(path, FORMAT_MILLIS);
+        int threadColumn = registerColumn(path + "-thread", FORMAT_MILLIS);
+        int[] latencyColumns = new int[LATENCY_COLUMNS.length];
+        for (int i = 0; i < latencyColumns.length; i++) {
+            // "ops" is a count, the percentiles are durations
+            latencyColumns[i] = registerColumn(path + "-" + LATENCY_COLUMNS[i], i > 0 ? FORMAT_MILLIS : FORMAT_COUNT);
         }
-        started = true;
-        prepareForNextRun();
-        if (values.isEmpty()) {
-            values.addAll(fixedColumns);
-            String startTime = dateFormat.format(new Date());
-            values.add(new Pair<>("time", startTime));
+        int[] throughputColumns = {
+                registerColumn(path + "-ops-per-s", FORMAT_COUNT),
+                registerColumn(path + "-us-per-op", FORMAT_MICROS),
+                registerColumn(path + "-mb-per-s", FORMAT_MEGA)
+        };
+        int checksumColumn = registerColumn(path + "-checksum", FORMAT_HEX);
+        // Probes are too expensive to run within a parent phase, so only top level phases get them
+        List<Integer> probeColumns = new ArrayList<>();
+        int[] settleColumns = new int[0];
+        if (parent == null) {
+            for (PhaseProbe probe : probes) {
+                for (String column : probe.columns()) {
+                    probeColumns.add(registerColumn(path + "-" + column, FORMAT_COUNT));
+                }
+            }
+            settleColumns = new int[]{
+                    registerColumn(path + "-settle", FORMAT_MILLIS), registerColumn(path + "-settled", FORMAT_COUNT)
+            };
+        }
+        Phase phase = new Phase(phases.size(), path, parent, timeColumn, threadColumn, latencyColumns,
+                throughputColumns, checksumColumn, toIntArray(probeColumns), settleColumns);
+        phase.traceName = traceLabel != null ? traceLabel + " " + path : path;
+        phases.add(phase);
+        if (parent != null) {
+            parent.children.put(name, phase);
+        } else {
+            phasesByName.put(name, phase);
+        }
+        return phase;
+    }
+
+    private int registerColumn(String name, byte format) {
+        int id = columnNames.size();
+        columnNames.add(name);
+        columnNameBytes.add(name.getBytes(UTF_8));
+        if (id == columnFormats.length) {
+            columnFormats = Arrays.copyOf(columnFormats, id * 2);
         }
-        this.name = name;
-        threadTimeMillis = SystemClock.currentThreadTimeMillis();
-        timeMillis = SystemClock.elapsedRealtime();
+        columnFormats[id] = format;
+        return id;
     }
 
     /**
-     * Try to give GC & finalization some time to settle down.
+     * Starts the phase with the given name. If another phase is already started, a nested phase of
+     * it is started, e.g. "put" within "insert". After the first time, the name is looked up without
+     * allocating (see {@link #registerPhase(String)}).
      */
-    public void prepareForNextRun() {
-        for (int i = 0; i < 5; i++) {
-            System.gc();
-            System.runFinalization();
-            try {
-                Thread.sleep(20);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+    public void start(String name) {
+        if (depth == 0) {
+            Phase phase = phasesByName.get(name);
+            start(phase != null ? phase.id : registerPhase(name));
+        } else {
+            Phase parent = openPhases[depth - 1];
+            Phase phase = parent.children.get(name);
+            start(phase != null ? phase.id : registerPhase(parent.id, name));
+        }
+    }
+
+    public void start(int phaseId) {
+        Phase phase = phases.get(phaseId);
+        Phase parent = depth > 0 ? openPhases[depth - 1] : null;
+        if (phase.parent != parent) {
+            throw new RuntimeException(parent == null ?
+                    "Phase " + phase.name + " must be started inside " + phase.parent.name :
+                    "Phase " + phase.name + " is not a child of " + parent.name);
+        }
+        boolean topLevel = depth == 0;
+        long settleNanos = 0;
+        if (topLevel) {
+            if (runStartMillis == 0) {
+                runStartMillis = System.currentTimeMillis();
+                // Before settling the heap, as beginning the journal allocates
+                beginJournal();
             }
+            settleNanos = prepareForNextRun();
+        }
+
+        // Reserve the phase's values in start order, so nested phases follow their parent
+        int slotCount = CHECKSUM_SLOT + 1 + phase.probeColumns.length + phase.settleColumns.length;
+        ensureRunCapacity(slotCount);
+        if (depth == openPhases.length) {
+            growStack();
+        }
+        if (openLatencies[depth] == null) {
+            openLatencies[depth] = new LatencyHistogram();
         }
+        openLatencies[depth].reset();
+        openPhases[depth] = phase;
+        openRunPhases[depth] = runPhaseCount;
+        runPhases[runPhaseCount] = phase.id;
+        runPhaseThreadOffsets[runPhaseCount] = -1;
+        runPhaseOffsets[runPhaseCount++] = runValueCount;
+        Arrays.fill(runColumns, runValueCount, runValueCount + slotCount, -1);
+        runValueCount += slotCount;
+        if (topLevel) {
+            putValue(runValueCount - 2, phase.settleColumns[0], settleNanos);
+            putValue(runValueCount - 1, phase.settleColumns[1], heapQuiescence.isSettled() ? 1 : 0);
+        }
+        openGenerations[depth] = ++generationCounter;
+        generation = generationCounter;
+        depth++;
+
+        if (topLevel) {
+            for (int i = 0; i < probes.size(); i++) {
+                probes.get(i).begin();
+            }
+        }
+        openThreadTimeNanos[depth - 1] = Debug.threadCpuTimeNanos();
+        if (profilingRun && profiledDepth == -1 && profiler.isProfiled(phase.name)
+                && profiler.start(phase.name, runs + 1)) {
+            profiledDepth = depth - 1;
+        }
+        Tracing.beginSection(phase.traceName);
+        openTimeNanos[depth - 1] = System.nanoTime();
+    }
+
+    /**
+     * True while a phase is started; anything else done meanwhile on the benchmark thread is part of
+     * the measured time.
+     */
+    public boolean isTiming() {
+        return depth > 0;
+    }
+
+    /**
+     * Operations processed by the phase stopped last, as given to {@link #stop(long)}, recorded as
+     * latencies or by default (see {@link #operations(long)}); -1 if unknown. Probes use it in end()
+     * to relate their values to the phase.
+     */
+    public long getStoppedOperations() {
+        return stoppedOperations;
+    }
+
+    /** Name of the current (innermost) phase, e.g. "insert/put", or null if no phase is started. */
+    public String getCurrentPhaseName() {
+        return depth > 0 ? openPhases[depth - 1].name : null;
     }
 
-    public String stop() {
-        long time = SystemClock.elapsedRealtime() - timeMillis;
-        long timeThread = SystemClock.currentThreadTimeMillis() - threadTimeMillis;
-        if (!started) {
+    /**
+     * Records the latency of a single operation within the current (innermost) phase. If any
+     * latencies were recorded, {@link #stop()} adds percentile columns (p50, p90, p99, p99.9 and max)
+     * for the phase.
+     */
+    public void recordLatency(long nanos) {
+        if (depth == 0) {
             throw new RuntimeException("Not started");
         }
-        started = false;
+        openLatencies[depth - 1].record(nanos);
+    }
 
-        String logMessage = name + ": " + time + " ms (thread: " + timeThread + " ms)";
-        values.add(new Pair<>(name, Long.toString(time)));
-        if (storeThreadTime) {
-            values.add(new Pair<>(name + "-thread", Long.toString(timeThread)));
+    /**
+     * Returns the recorder of the calling thread for the current (innermost) phase; thread-safe. Use
+     * it to record operations of concurrent workloads: when the phase stops, the latencies of all
+     * threads are merged into the phase's latency columns. In addition, the phase gets the
+     * throughput of all threads combined and the throughput and latency of each thread (by thread
+     * ID order) as columns, e.g. "read-ops-per-s" and "read-t1-p99".
+     */
+    public ThreadRecorder threadRecorder() {
+        int generation = this.generation;
+        if (generation == NO_PHASE) {
+            throw new IllegalStateException("Not started");
         }
-        name = null;
-        return logMessage;
+        ThreadRecorder recorder = threadRecorders.get();
+        if (recorder == null) {
+            recorder = new ThreadRecorder(Thread.currentThread());
+            threadRecorders.set(recorder);
+        }
+        if (recorder.generation != generation) {
+            recorder.reset(generation);
+            activeRecorders.add(recorder);
+        }
+        return recorder;
+    }
+
+    /**
+     * Waits until GC & finalization have settled down (see {@link HeapQuiescence}).
+     *
+     * @return the time settling took in nanoseconds
+     */
+    public long prepareForNextRun() {
+        long settleNanos = heapQuiescence.settle();
+        if (!heapQuiescence.isSettled()) {
+            Log.w(TAG, "Heap did not settle within " + formatDuration(settleNanos));
+        }
+        return settleNanos;
+    }
+
+    /**
+     * Stops the current (innermost) phase and records its values into primitive storage; everything
+     * is formatted only on {@link #commit()}. Throughput is based on the number of recorded latencies
+     * or the default operations (see {@link #operations(long)}).
+     */
+    public void stop() {
+        stop(-1);
+    }
+
+    /**
+     * Like {@link #stop()}, but with the number of operations the phase processed, e.g. the number
+     * of entities a query returned.
+     */
+    public void stop(long operations) {
+        stop(operations, -1);
+    }
+
+    /**
+     * Like {@link #stop(long)}, but also with the payload bytes the phase processed, e.g. of the
+     * entities it inserted; -1 to use the bytes per operation (see {@link #setBytesPerOperation(double)}).
+     */
+    public void stop(long operations, long bytes) {
+        long timeNanos = System.nanoTime();
+        long threadTimeNanos = Debug.threadCpuTimeNanos();
+        if (depth == 0) {
+            throw new RuntimeException("Not started");
+        }
+        Tracing.endSection();
+        depth--;
+        if (profiledDepth == depth) {
+            stopProfiler();
+        }
+        Phase phase = openPhases[depth];
+        openPhases[depth] = null;
+        generation = depth > 0 ? openGenerations[depth - 1] : NO_PHASE;
+        int offset = runPhaseOffsets[openRunPhases[depth]];
+        LatencyHistogram latencies = openLatencies[depth];
+        collectThreadRecorders(openGenerations[depth], latencies);
+
+        long phaseNanos = timeNanos - openTimeNanos[depth];
+        putValue(offset++, phase.timeColumn, phaseNanos);
+        putValue(offset++, phase.threadColumn, threadTimeNanos - openThreadTimeNanos[depth]);
+        if (operations < 0) {
+            operations = latencies.getCount() > 0 ? latencies.getCount() : defaultOperations;
+        }
+        stoppedOperations = operations > 0 ? operations : -1;
+        if (latencies.getCount() > 0) {
+            putValue(offset, phase.latencyColumns[0], latencies.getCount());
+            for (int i = 0; i < LATENCY_PERCENTILES.length; i++) {
+                putValue(offset + i + 1, phase.latencyColumns[i + 1], latencies.getValueAtPercentile(LATENCY_PERCENTILES[i]));
+            }
+            putValue(offset + LATENCY_PERCENTILES.length + 1, phase.latencyColumns[LATENCY_PERCENTILES.length + 1], latencies.getMax());
+            latencies.reset();
+        }
+        offset += phase.latencyColumns.length;
+        if (operations > 0 && phaseNanos > 0) {
+            putValue(offset, phase.throughputColumns[0], Math.round(operations * 1e9 / phaseNanos));
+            putValue(offset + 1, phase.throughputColumns[1], phaseNanos / operations);
+            if (bytes < 0 && bytesPerOperation > 0) {
+                bytes = Math.round(operations * bytesPerOperation);
+            }
+            if (bytes > 0) {
+                putValue(offset + 2, phase.throughputColumns[2], Math.round(bytes * 1e9 / phaseNanos));
+            }
+        }
+        offset += phase.throughputColumns.length + 1;
+        lastStoppedRunPhase = openRunPhases[depth];
+        if (depth == 0) {
+            for (int i = 0; i < phase.probeColumns.length; i++) {
+                runColumns[offset + i] = phase.probeColumns[i];
+            }
+            offset += phase.probeColumns.length;
+            // Reverse order of begin(), so probes added last (e.g. AllocationProbe) do not measure
+            // what other probes do in end()
+            int probeOffset = offset;
+            for (int i = probes.size() - 1; i >= 0; i--) {
+                PhaseProbe probe = probes.get(i);
+                probeOffset -= probe.columns().length;
+                probe.end(runValues, probeOffset);
+            }
+        }
+        if (!phaseRecorders.isEmpty()) {
+            putThreadValues(phase, openRunPhases[depth], timeNanos);
+        }
+        if (depth == 0) {
+            // Not for nested phases: writing would add to the time of their parent
+            appendJournal(runPhaseOffsets[openRunPhases[0]], runValueCount);
+        }
+    }
+
+    /**
+     * Sets the checksum of the values accessed in the phase stopped last (see {@link Blackhole}), so
+     * it can be compared across backends.
+     */
+    public void setChecksum(long checksum, long entityCount) {
+        if (lastStoppedRunPhase == -1) {
+            throw new IllegalStateException("No phase stopped in this run");
+        }
+        int runPhase = lastStoppedRunPhase;
+        int slot = runPhaseOffsets[runPhase] + CHECKSUM_SLOT;
+        putValue(slot, phases.get(runPhases[runPhase]).checksumColumn, checksum);
+        runPhaseChecksumEntities[runPhase] = entityCount;
+        if (depth == 0) {
+            // Nested phases are journaled with their top level phase
+            appendJournal(slot, slot + 1);
+        }
+    }
+
+    /**
+     * Checksums of the phases of the last committed run by phase name; see {@link #setChecksum(long, long)}.
+     */
+    public Map<String, Long> getLastChecksums() {
+        return lastChecksums;
+    }
+
+    private void stopProfiler() {
+        File file = profiler.stop();
+        profiledDepth = -1;
+        profileFiles.add(file);
+        files.add(file);
+        Log.i(TAG, "Profile written to " + file.getAbsolutePath());
+    }
+
+    /**
+     * Takes the recorders registered for the given phase generation and merges their latencies.
+     * Recorders of outer phases still open are put back; any others are stale (e.g. registered just
+     * as their phase stopped) and dropped, so recorders of finished threads do not pile up.
+     */
+    private void collectThreadRecorders(int phaseGeneration, LatencyHistogram latencies) {
+        phaseRecorders.clear();
+        if (activeRecorders.isEmpty()) {
+            return;
+        }
+        ThreadRecorder recorder;
+        while ((recorder = activeRecorders.poll()) != null) {
+            if (recorder.generation == phaseGeneration) {
+                phaseRecorders.add(recorder);
+                latencies.add(recorder.latencies);
+            } else if (isOpenGeneration(recorder.generation)) {
+                outerRecorders.add(recorder);
+            }
+        }
+        for (int i = 0; i < outerRecorders.size(); i++) {
+            activeRecorders.add(outerRecorders.get(i));
+        }
+        outerRecorders.clear();
+        Collections.sort(phaseRecorders, THREAD_ID_ORDER);
+    }
+
+    /** Whether a phase of the given generation is still open; the stopping phase no longer counts. */
+    private boolean isOpenGeneration(int phaseGeneration) {
+        for (int i = 0; i < depth; i++) {
+            if (openGenerations[i] == phaseGeneration) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Appends thread count and per thread values after the values reserved for the phase, as the
+     * number of threads is only known now.
+     */
+    private void putThreadValues(Phase phase, int runPhase, long phaseEndNanos) {
+        int threadCount = phaseRecorders.size();
+        ensureRunCapacity(1 + threadCount * THREAD_COLUMNS.length);
+        int offset = runValueCount;
+        runPhaseThreadOffsets[runPhase] = offset;
+        int[] columns = phase.getThreadColumns(this, threadCount);
+        putValue(offset++, columns[0], threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            ThreadRecorder recorder = phaseRecorders.get(i);
+            int column = 1 + i * THREAD_COLUMNS.length;
+            putValue(offset++, columns[column++], recorder.getCount());
+            putValue(offset++, columns[column++], recorder.getOpsPerSecond(phaseEndNanos));
+            putValue(offset++, columns[column++], recorder.latencies.getValueAtPercentile(50));
+            putValue(offset++, columns[column++], recorder.latencies.getValueAtPercentile(99));
+            putValue(offset++, columns[column], recorder.latencies.getMax());
+        }
+        runValueCount = offset;
+        phaseRecorders.clear();
+    }
+
+    private void putValue(int index, int column, long value) {
+        runColumns[index] = column;
+        runValues[index] = value;
     }
 
-    public void commit() {
+    private void ensureRunCapacity(int valueCount) {
+        if (runValueCount + valueCount > runValues.length) {
+            int newLength = Math.max(runValues.length * 2, runValueCount + valueCount);
+            runColumns = Arrays.copyOf(runColumns, newLength);
+            runValues = Arrays.copyOf(runValues, newLength);
+        }
+        if (runPhaseCount == runPhases.length) {
+            runPhases = Arrays.copyOf(runPhases, runPhaseCount * 2);
+            runPhaseOffsets = Arrays.copyOf(runPhaseOffsets, runPhaseCount * 2);
+            runPhaseThreadOffsets = Arrays.copyOf(runPhaseThreadOffsets, runPhaseCount * 2);
+            runPhaseChecksumEntities = Arrays.copyOf(runPhaseChecksumEntities, runPhaseCount * 2);
+        }
+    }
+
+    private void growStack() {
+        int newLength = openPhases.length * 2;
+        openPhases = Arrays.copyOf(openPhases, newLength);
+        openRunPhases = Arrays.copyOf(openRunPhases, newLength);
+        openThreadTimeNanos = Arrays.copyOf(openThreadTimeNanos, newLength);
+        openTimeNanos = Arrays.copyOf(openTimeNanos, newLength);
+        openLatencies = Arrays.copyOf(openLatencies, newLength);
+        openGenerations = Arrays.copyOf(openGenerations, newLength);
+    }
+
+    /**
+     * Ends the current run: formats and writes its values (unless it is a warm up or profiling run) and keeps the
+     * phase times for {@link #writeSummary(String)}. Phases still open are discarded.
+     *
+     * @return the phase results of the run formatted for logging
+     */
+    public String commit() {
+        return commit(false);
+    }
+
+    /**
+     * Like {@link #commit()} for a run that was cancelled: phases done so far are written with status
+     * "cancelled", but not used for the summary.
+     */
+    public String commitCancelled() {
+        return commit(true);
+    }
+
+    private String commit(boolean cancelled) {
         runs++;
-        if (runs > warmUpRuns) {
+        if (depth > 0) {
+            Log.w(TAG, "Discarding " + depth + " phase(s) not stopped in run " + runs);
+            // Drop all values of the open phases (including e.g. settle time written on start); nested
+            // phases were started after the top level phase, so they are all at the end
+            runPhaseCount = openRunPhases[0];
+            runValueCount = runPhaseOffsets[runPhaseCount];
+            if (lastStoppedRunPhase >= runPhaseCount) {
+                lastStoppedRunPhase = -1;
+            }
+            Arrays.fill(openPhases, 0, depth, null);
+            for (int i = 0; i < depth; i++) {
+                Tracing.endSection();
+            }
+            depth = 0;
+            generation = NO_PHASE;
+            activeRecorders.clear();
+            if (profiledDepth != -1) {
+                stopProfiler();
+            }
+        }
+        String logMessage = formatRunLog();
+        lastChecksums.clear();
+        for (int i = 0; i < runPhaseCount; i++) {
+            int checksumSlot = runPhaseOffsets[i] + CHECKSUM_SLOT;
+            if (runColumns[checksumSlot] != -1) {
+                String name = phases.get(runPhases[i]).name;
+                lastChecksums.put(name, runValues[checksumSlot]);
+                Log.d(TAG, name + " checksum: " + Long.toHexString(runValues[checksumSlot]) + " ("
+                        + runPhaseChecksumEntities[i] + " entities)");
+            }
+        }
+        if (profilingRun) {
+            StringBuilder log = new StringBuilder(logMessage).append("\nProfiling run ").append(runs)
+                    .append(" (excluded from results)");
+            for (File file : profileFiles) {
+                log.append("\nProfile: ").append(file.getAbsolutePath());
+            }
+            if (profileFiles.isEmpty()) {
+                log.append("\nNo phase was profiled");
+            }
+            logMessage = log.toString();
+            profileFiles.clear();
+            profilingRun = false;
+        } else if (runs > warmUpRuns) {
             Log.d(TAG, "Writing results for run " + runs);
-            String[] collectedHeaders = getAllFirsts(values);
-            if (!Arrays.equals(collectedHeaders, headers)) {
-                headers = collectedHeaders;
-                String line = StringUtils.join(headers, "" + separator) + '\n';
-                try {
-                    FileUtils.appendUtf8(file, line);
-                } catch (IOException e) {
-                    throw new RuntimeException("Could not write header in benchmark file", e);
+            List<String> headers = new ArrayList<>();
+            List<String> values = new ArrayList<>();
+            addRowValues(runs, cancelled ? STATUS_CANCELLED : STATUS_COMPLETED, headers, values);
+            try {
+                results.writeRow(headers.toArray(new String[0]), values.toArray(new String[0]));
+                results.flush();
+            } catch (IOException e) {
+                throw new RuntimeException("Could not write results to benchmark file", e);
+            }
+
+            if (cancelled) {
+                logMessage += "\nRun " + runs + " cancelled (excluded from summary)";
+            } else {
+                for (int i = 0; i < runPhaseCount; i++) {
+                    Phase phase = phases.get(runPhases[i]);
+                    int offset = runPhaseOffsets[i];
+                    if (runColumns[offset] == -1) {
+                        continue;
+                    }
+                    addSample(phase.name, true, runValues[offset]);
+                    if (storeThreadTime) {
+                        addSample(phase.name + "-thread", false, runValues[offset + 1]);
+                    }
                 }
             }
+        } else {
+            Log.d(TAG, "Ignoring results for run " + runs + " (warm up)");
+        }
+        journal.clear();
+        journaling = false;
+        runValueCount = 0;
+        runPhaseCount = 0;
+        lastStoppedRunPhase = -1;
+        runStartMillis = 0;
+        return logMessage;
+    }
+
+    /**
+     * Adds the columns of a result row for the values of the current run.
+     */
+    private void addRowValues(int run, String status, List<String> headers, List<String> values) {
+        addRunColumns(run, status, headers, values);
+        for (int i = 0; i < runValueCount; i++) {
+            int column = runColumns[i];
+            if (isWritten(column)) {
+                headers.add(columnNames.get(column));
+                values.add(formatValue(columnFormats[column], runValues[i]));
+            }
+        }
+    }
+
+    private boolean isWritten(int column) {
+        return column != -1 && (storeThreadTime || !isThreadTimeColumn(column));
+    }
+
+    /**
+     * Adds the columns describing a run to a result row, i.e. all but the phase values.
+     */
+    private void addRunColumns(int run, String status, List<String> headers, List<String> values) {
+        for (Pair<String, String> column : fixedColumns) {
+            headers.add(column.first);
+            values.add(column.second);
+        }
+        headers.add("run");
+        values.add(Integer.toString(run));
+        headers.add(STATUS_COLUMN);
+        values.add(status);
+        for (Map.Entry<String, String> column : runInfo.entrySet()) {
+            headers.add(column.getKey());
+            values.add(column.getValue());
+        }
+        headers.add("time");
+        values.add(dateFormat.format(new Date(runStartMillis != 0 ? runStartMillis : System.currentTimeMillis())));
+    }
+
+    /**
+     * Starts the journal of the run with its describing columns; its phases are appended as they stop
+     * (see {@link #appendJournal(int, int)}), so they survive the process dying mid-run.
+     */
+    private void beginJournal() {
+        journaling = !profilingRun && runs + 1 > warmUpRuns;
+        if (journaling) {
+            List<String> headers = new ArrayList<>();
+            List<String> values = new ArrayList<>();
+            addRunColumns(runs + 1, STATUS_INTERRUPTED, headers, values);
+            journal.begin(headers, values);
+        }
+    }
+
+    /**
+     * Appends the values of the given slots to the journal; does not allocate.
+     */
+    private void appendJournal(int fromSlot, int toSlot) {
+        if (!journaling) {
+            return;
+        }
+        for (int i = fromSlot; i < toSlot; i++) {
+            int column = runColumns[i];
+            if (isWritten(column)) {
+                journal.append(i, columnFormats[column], columnNameBytes.get(column), runValues[i]);
+            }
+        }
+        journal.flush();
+    }
+
+    /**
+     * If a previous process died during a run, appends the phases it completed to the results with
+     * status "interrupted".
+     */
+    private void recoverJournal() {
+        String[][] row = journal.read();
+        if (row == null) {
+            return;
+        }
+        try {
+            results.writeRow(row[0], row[1]);
+            results.flush();
+            Log.w(TAG, "Recovered partial results of an interrupted run from " + journal.getFile());
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write results to benchmark file", e);
+        }
+        journal.clear();
+    }
+
+    private boolean isThreadTimeColumn(int column) {
+        for (int i = 0; i < runPhaseCount; i++) {
+            if (phases.get(runPhases[i]).threadColumn == column) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-            StringBuilder line = new StringBuilder();
-            for (Pair<String, String> pair : values) {
-                line.append(pair.second).append(separator);
+    private void addSample(String column, boolean wallTime, long value) {
+        PhaseSamples phaseSamples = samples.get(column);
+        if (phaseSamples == null) {
+            phaseSamples = new PhaseSamples(wallTime);
+            samples.put(column, phaseSamples);
+        }
+        phaseSamples.add(runs, value);
+    }
+
+    /**
+     * Formats the phases of the run as a tree: nested phases are indented below their parent.
+     */
+    private String formatRunLog() {
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < runPhaseCount; i++) {
+            Phase phase = phases.get(runPhases[i]);
+            int offset = runPhaseOffsets[i];
+            if (runColumns[offset] == -1) {
+                continue;
+            }
+            if (log.length() > 0) {
+                log.append('\n');
+            }
+            StringBuilder indent = new StringBuilder();
+            for (Phase parent = phase.parent; parent != null; parent = parent.parent) {
+                indent.append("  ");
+            }
+            log.append(indent).append(phase.getSimpleName()).append(": ").append(formatDuration(runValues[offset]))
+                    .append(" (thread: ").append(formatDuration(runValues[offset + 1])).append(')');
+            int throughputOffset = offset + 2 + LATENCY_COLUMNS.length;
+            if (runColumns[throughputOffset] != -1) {
+                log.append(", ").append(runValues[throughputOffset]).append(" ops/s, ")
+                        .append(formatDuration(runValues[throughputOffset + 1])).append("/op");
+                if (runColumns[throughputOffset + 2] != -1) {
+                    log.append(", ").append(String.format(Locale.US, "%.1f", runValues[throughputOffset + 2] / 1e6))
+                            .append(" MB/s");
+                }
+            }
+            if (runColumns[offset + CHECKSUM_SLOT] != -1) {
+                log.append(", checksum: ").append(Long.toHexString(runValues[offset + CHECKSUM_SLOT]));
             }
-            line.append('\n');
+            int latencyOffset = offset + 2;
+            if (runColumns[latencyOffset] != -1) {
+                log.append('\n').append(indent).append("  ").append(runValues[latencyOffset]).append(" ops");
+                for (int j = 1; j < LATENCY_COLUMNS.length; j++) {
+                    log.append(", ").append(LATENCY_COLUMNS[j]).append(": ")
+                            .append(formatDuration(runValues[latencyOffset + j]));
+                }
+            }
+            int threadOffset = runPhaseThreadOffsets[i];
+            if (threadOffset != -1) {
+                log.append('\n').append(indent).append("  ").append(runValues[threadOffset]).append(" threads, ops/s");
+                for (int j = 0; j < runValues[threadOffset]; j++) {
+                    log.append(j == 0 ? " (" : ", ").append('t').append(j + 1).append(": ")
+                            .append(runValues[threadOffset + 2 + j * THREAD_COLUMNS.length]);
+                }
+                log.append(')');
+            }
+        }
+        return log.toString();
+    }
+
+    /**
+     * Returns the precision of the phase times so far: the largest 95% confidence interval half width
+     * relative to the mean of all phases, e.g. 0.02 for ±2%. NaN if there are less than 2 runs.
+     */
+    public double getPrecision() {
+        double precision = Double.NaN;
+        for (PhaseSamples phaseSamples : samples.values()) {
+            if (phaseSamples.wallTime && phaseSamples.count > 1) {
+                double relative = new Statistics(phaseSamples.getValues()).getRelativeCiHalfWidth();
+                if (Double.isNaN(precision) || relative > precision) {
+                    precision = relative;
+                }
+            }
+        }
+        return precision;
+    }
+
+    /**
+     * Writes a row per phase summarizing all committed runs (mean, median, stddev, min/max, 95%
+     * confidence interval, coefficient of variation and outlier runs) to the summary file.
+     *
+     * @param stopReason why no more runs were done, e.g. "converged"; written to each row
+     * @return the summary formatted for logging
+     */
+    public String writeSummary(String stopReason) {
+        if (samples.isEmpty()) {
+            return "No results to summarize";
+        }
+        StringBuilder log = new StringBuilder("Summary (stopped: " + stopReason + ")");
+        List<String> headers = new ArrayList<>();
+        for (Pair<String, String> column : fixedColumns) {
+            headers.add(column.first);
+        }
+        headers.add("time");
+        headers.addAll(Arrays.asList(SUMMARY_HEADERS));
+        String[] headersArray = headers.toArray(new String[0]);
+
+        String time = dateFormat.format(new Date());
+        for (Map.Entry<String, PhaseSamples> entry : samples.entrySet()) {
+            PhaseSamples phaseSamples = entry.getValue();
+            Statistics statistics = new Statistics(phaseSamples.getValues());
+            StringBuilder outlierRuns = new StringBuilder();
+            for (int outlier : statistics.outliers) {
+                if (outlierRuns.length() > 0) {
+                    outlierRuns.append(',');
+                }
+                outlierRuns.append(phaseSamples.runs[outlier]);
+            }
+
+            List<String> row = new ArrayList<>();
+            for (Pair<String, String> column : fixedColumns) {
+                row.add(column.second);
+            }
+            row.addAll(Arrays.asList(time,
+                    entry.getKey(),
+                    Integer.toString(statistics.count),
+                    formatMillis(statistics.mean),
+                    formatMillis(statistics.median),
+                    formatMillis(statistics.stdDev),
+                    formatMillis(statistics.min),
+                    formatMillis(statistics.max),
+                    formatMillis(statistics.getCiLow()),
+                    formatMillis(statistics.getCiHigh()),
+                    formatPercent(statistics.getCv()),
+                    formatPercent(statistics.getRelativeCiHalfWidth()),
+                    outlierRuns.toString(),
+                    stopReason));
             try {
-                FileUtils.appendUtf8(file, line);
+                summary.writeRow(headersArray, row.toArray(new String[0]));
             } catch (IOException e) {
-                throw new RuntimeException("Could not write header in benchmark file", e);
+                throw new RuntimeException("Could not write summary file", e);
+            }
+
+            log.append("\n").append(entry.getKey()).append(": ").append(formatDuration(Math.round(statistics.mean)));
+            if (statistics.count > 1) {
+                log.append(" ± ").append(formatDuration(Math.round(statistics.ciHalfWidth)))
+                        .append(" (cv ").append(formatPercent(statistics.getCv())).append("%)");
             }
+            if (outlierRuns.length() > 0) {
+                log.append(", outlier runs: ").append(outlierRuns);
+            }
+        }
+        try {
+            summary.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write summary file", e);
+        }
+        return log.toString();
+    }
+
+    /**
+     * Files of this benchmark: results, summary and profiles; files not written yet may not exist.
+     */
+    public List<File> getFiles() {
+        return files;
+    }
+
+    /**
+     * Closes the results and summary files; call once all runs are done.
+     */
+    public void close() {
+        try {
+            results.close();
+            summary.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not close benchmark files", e);
+        }
+    }
+
+    /**
+     * Like {@link #formatMillis(long)} for a computed value; NaN (e.g. a single sample's confidence
+     * interval) becomes an empty cell.
+     */
+    static String formatMillis(double nanos) {
+        return Double.isNaN(nanos) ? "" : formatMillis(Math.round(nanos));
+    }
+
+    static String formatPercent(double ratio) {
+        return Double.isNaN(ratio) ? "" : String.format(Locale.US, "%.2f", ratio * 100);
+    }
+
+    /**
+     * Formats nanoseconds as milliseconds without losing precision, e.g. "0.012345" for 12345 ns.
+     * Milliseconds stay the unit of the results file, so older rows remain comparable.
+     */
+    static String formatMillis(long nanos) {
+        return formatDecimal(nanos, 6);
+    }
+
+    /**
+     * Formats a value of a column according to its format, e.g. {@link #FORMAT_MICROS}.
+     */
+    static String formatValue(byte format, long value) {
+        switch (format) {
+            case FORMAT_MILLIS:
+                return formatMillis(value);
+            case FORMAT_MICROS:
+                return formatDecimal(value, 3);
+            case FORMAT_MEGA:
+                return formatDecimal(value, 6);
+            case FORMAT_HEX:
+                return Long.toHexString(value);
+            default:
+                return Long.toString(value);
+        }
+    }
+
+    /**
+     * Formats the value divided by 10^decimals exactly, e.g. "0.012345" for 12345 and 6 decimals.
+     */
+    static String formatDecimal(long value, int decimals) {
+        long divisor = 1;
+        for (int i = 0; i < decimals; i++) {
+            divisor *= 10;
+        }
+        StringBuilder builder = new StringBuilder(16);
+        if (value < 0) {
+            builder.append('-');
+            value = -value;
+        }
+        builder.append(value / divisor).append('.');
+        String fraction = Long.toString(value % divisor);
+        for (int i = fraction.length(); i < decimals; i++) {
+            builder.append('0');
+        }
+        return builder.append(fraction).toString();
+    }
+
+    /**
+     * Formats nanoseconds for humans using an adaptive unit (ns, µs, ms or s).
+     */
+    static String formatDuration(long nanos) {
+        long absNanos = Math.abs(nanos);
+        if (absNanos < 1000) {
+            return nanos + " ns";
+        } else if (absNanos < 1000000) {
+            return String.format(Locale.US, "%.1f µs", nanos / 1e3);
+        } else if (absNanos < 1000000000) {
+            return String.format(Locale.US, "%.2f ms", nanos / 1e6);
         } else {
-            Log.d(TAG, "Ignoring results for run " + runs + " (warm up)");
+            return String.format(Locale.US, "%.3f s", nanos / 1e9);
         }
-        values.clear();
     }
 
-    private String[] getAllFirsts(List<Pair<String, String>> columns) {
-        String[] firsts = new String[columns.size()];
-        for (int i = 0; i < firsts.length; i++) {
-            firsts[i] = columns.get(i).first;
+    private static final String[] LATENCY_COLUMNS = {"ops", "p50", "p90", "p99", "p99.9", "max"};
+    private static final double[] LATENCY_PERCENTILES = {50, 90, 99, 99.9};
+    /** Columns per thread of phases recorded by multiple threads (see {@link ThreadRecorder}). */
+    private static final String[] THREAD_COLUMNS = {"ops", "ops-per-s", "p50", "p99", "max"};
+    private static final int NO_PHASE = -1;
+    private static final Comparator<ThreadRecorder> THREAD_ID_ORDER =
+            (a, b) -> Long.compare(a.thread.getId(), b.thread.getId());
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /** Column of result rows telling if the run completed. */
+    static final String STATUS_COLUMN = "status";
+    static final String STATUS_COMPLETED = "completed";
+    static final String STATUS_CANCELLED = "cancelled";
+    /** The process died during the run; see {@link PhaseJournal}. */
+    static final String STATUS_INTERRUPTED = "interrupted";
+    /** Values of a phase: time, thread time, latencies, throughput, checksum, probes, settle time. */
+    private static final int CHECKSUM_SLOT = 2 + 6 + 3;
+
+    // Column formats
+    /** Plain number. */
+    static final byte FORMAT_COUNT = 0;
+    /** Nanoseconds written as milliseconds. */
+    static final byte FORMAT_MILLIS = 1;
+    /** Nanoseconds written as microseconds. */
+    static final byte FORMAT_MICROS = 2;
+    /** Plain number written in millions, e.g. bytes as MB. */
+    static final byte FORMAT_MEGA = 3;
+    /** Number written as hex, e.g. checksums. */
+    static final byte FORMAT_HEX = 4;
+
+    private static final String[] SUMMARY_HEADERS = {
+            "phase", "runs", "mean", "median", "stddev", "min", "max", "ci95-low", "ci95-high", "cv-%",
+            "ci95-relative-%", "outlier-runs", "stop-reason"
+    };
+
+    private static class PhaseSamples {
+        /** Wall time samples; false for thread time. */
+        final boolean wallTime;
+        long[] values = new long[16];
+        int[] runs = new int[16];
+        int count;
+
+        PhaseSamples(boolean wallTime) {
+            this.wallTime = wallTime;
+        }
+
+        void add(int run, long value) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+                runs = Arrays.copyOf(runs, count * 2);
+            }
+            runs[count] = run;
+            values[count++] = value;
+        }
+
+        double[] getValues() {
+            double[] doubles = new double[count];
+            for (int i = 0; i < count; i++) {
+                doubles[i] = values[i];
+            }
+            return doubles;
+        }
+    }
+
+    private static int[] toIntArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    private static class Phase {
+        final int id;
+        /** Path of the phase, e.g. "insert/put" for a nested phase. */
+        final String name;
+        final Phase parent;
+        final Map<String, Phase> children = new HashMap<>();
+        final int timeColumn;
+        final int threadColumn;
+        final int[] latencyColumns;
+        /** ops/s, µs/op and MB/s. */
+        final int[] throughputColumns;
+        final int checksumColumn;
+        final int[] probeColumns;
+        /** Settle time and whether the heap settled before the phase; only for top level phases. */
+        final int[] settleColumns;
+        int[] threadColumns;
+        int registeredThreads;
+        String traceName;
+
+        Phase(int id, String name, Phase parent, int timeColumn, int threadColumn, int[] latencyColumns,
+              int[] throughputColumns, int checksumColumn, int[] probeColumns, int[] settleColumns) {
+            this.id = id;
+            this.name = name;
+            this.parent = parent;
+            this.timeColumn = timeColumn;
+            this.threadColumn = threadColumn;
+            this.latencyColumns = latencyColumns;
+            this.throughputColumns = throughputColumns;
+            this.checksumColumn = checksumColumn;
+            this.probeColumns = probeColumns;
+            this.settleColumns = settleColumns;
+        }
+
+        /**
+         * Returns the thread count and per thread columns for the given number
+         * of threads, registering missing ones.
+         */
+        int[] getThreadColumns(Benchmark benchmark, int threadCount) {
+            int columnCount = 1 + threadCount * THREAD_COLUMNS.length;
+            if (threadColumns == null) {
+                threadColumns = new int[columnCount];
+                threadColumns[0] = benchmark.registerColumn(name + "-threads", FORMAT_COUNT);
+                registeredThreads = 0;
+            } else if (threadColumns.length < columnCount) {
+                threadColumns = Arrays.copyOf(threadColumns, columnCount);
+            }
+            for (; registeredThreads < threadCount; registeredThreads++) {
+                int column = 1 + registeredThreads * THREAD_COLUMNS.length;
+                for (int i = 0; i < THREAD_COLUMNS.length; i++) {
+                    // "ops" and "ops-per-s" are counts, the percentiles are durations
+                    threadColumns[column + i] = benchmark.registerColumn(
+                            name + "-t" + (registeredThreads + 1) + "-" + THREAD_COLUMNS[i],
+                            i > 1 ? FORMAT_MILLIS : FORMAT_COUNT);
+                }
+            }
+            return threadColumns;
+        }
+
+        String getSimpleName() {
+            return parent != null ? name.substring(parent.name.length() + 1) : name;
         }
-        return firsts;
     }
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.objectbox.performanceapp;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+import io.objectbox.performanceapp.greendao.GreendaoPerfTest;
+import io.objectbox.performanceapp.objectbox.ObjectBoxPerfTest;
+import io.objectbox.performanceapp.realm.RealmPerfTest;
+import io.objectbox.performanceapp.room.RoomPerfTest;
+
+/**
+ * Runs a matrix of backends, test types and entity counts without UI, e.g. for unattended runs on
+ * emulators or device farms:
+ * <pre>
+ * adb shell am instrument -w -e backends objectbox,room -e types crud,query-id -e counts 10000,100000 \
+ *     -e runs 5 io.objectbox.performanceapp/.BenchmarkInstrumentation
+ * </pre>
+ * Arguments (all optional): backends (objectbox, realm, greendao, room or all; default all), types
+ * ({@link TestType#nameShort} or all; default crud), counts (default 10000), runs (default 1),
+ * adaptive (true/false), allocations (true/false), profilePhases (e.g. "load,access") and isolation
+ * (none, backend or run; see {@link PerfTestRunner.Isolation}), schedule (sequential, alternating or
+ * random; see {@link PerfTestRunner.Schedule}) and seed (for random, default: current time).
+ * <p>
+ * The paths of the result files are reported in the result bundle ("files", one per line).
+ */
+public class BenchmarkInstrumentation extends Instrumentation {
+
+    private static final String TAG = "PERF";
+    private static final String[] ALL_BACKENDS = {"objectbox", "realm", "greendao", "room"};
+
+    private String[] backends;
+    private List<TestType> types;
+    private int[] counts;
+    private int runs;
+    private boolean adaptive;
+    private boolean allocations;
+    private String[] profilePhases;
+    private PerfTestRunner.Isolation isolation;
+    private PerfTestRunner.Schedule schedule;
+    private long seed;
+    private String argumentError;
+
+    @Override
+    public void onCreate(Bundle arguments) {
+        super.onCreate(arguments);
+        try {
+            backends = splitArgument(arguments.getString("backends", "all"));
+            if (backends.length == 1 && backends[0].equals("all")) {
+                backends = ALL_BACKENDS;
+            }
+            for (String backend : backends) {
+                createTest(backend); // Fail early for unknown backends
+            }
+            types = parseTypes(arguments.getString("types", "crud"));
+            String[] countArgs = splitArgument(arguments.getString("counts", "10000"));
+            counts = new int[countArgs.length];
+            for (int i = 0; i < countArgs.length; i++) {
+                counts[i] = Integer.parseInt(countArgs[i]);
+            }
+            runs = Integer.parseInt(arguments.getString("runs", "1"));
+            adaptive = Boolean.parseBoolean(arguments.getString("adaptive", "false"));
+            allocations = Boolean.parseBoolean(arguments.getString("allocations", "false"));
+            String phases = arguments.getString("profilePhases", "");
+            profilePhases = phases.trim().isEmpty() ? null : splitArgument(phases);
+            isolation = PerfTestRunner.Isolation.valueOf(arguments.getString("isolation", "none").toUpperCase(Locale.US));
+            schedule = PerfTestRunner.Schedule.valueOf(arguments.getString("schedule", "sequential").toUpperCase(Locale.US));
+            seed = Long.parseLong(arguments.getString("seed", Long.toString(System.currentTimeMillis())));
+        } catch (IllegalArgumentException e) {
+            argumentError = e.getMessage();
+        }
+        start();
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        Bundle results = new Bundle();
+        if (argumentError != null) {
+            results.putString(REPORT_KEY_STREAMRESULT, "Invalid arguments: " + argumentError + "\n");
+            finish(Activity.RESULT_CANCELED, results);
+            return;
+        }
+
+        List<File> files = new ArrayList<>();
+        for (int count : counts) {
+            for (TestType type : types) {
+                String description = type.nameShort + " with " + count + " entities";
+                Log.i(TAG, "Running " + description);
+                List<File> testFiles;
+                try {
+                    testFiles = runTests(type, count);
+                } catch (InterruptedException e) {
+                    results.putString(REPORT_KEY_STREAMRESULT, "Interrupted\n");
+                    finish(Activity.RESULT_CANCELED, results);
+                    return;
+                }
+                files.addAll(testFiles);
+
+                Bundle status = new Bundle();
+                status.putString(REPORT_KEY_STREAMRESULT, "Done: " + description + ", "
+                        + testFiles.size() + " files\n");
+                sendStatus(0, status);
+            }
+        }
+
+        StringBuilder paths = new StringBuilder();
+        for (File file : files) {
+            paths.append(file.getAbsolutePath()).append('\n');
+        }
+        results.putString("files", paths.toString());
+        results.putString(REPORT_KEY_STREAMRESULT, "Result files:\n" + paths);
+        finish(Activity.RESULT_OK, results);
+    }
+
+    /** Runs all backends for one test type and entity count; blocks until done. */
+    private List<File> runTests(TestType type, int count) throws InterruptedException {
+        List<PerfTest> tests = new ArrayList<>();
+        for (String backend : backends) {
+            tests.add(createTest(backend));
+        }
+        CountDownLatch doneLatch = new CountDownLatch(1);
+        PerfTestRunner testRunner = new PerfTestRunner(getTargetContext(), doneLatch::countDown, null, runs, count);
+        if (adaptive) {
+            testRunner.setAdaptive(PerfTestRunner.DEFAULT_TARGET_PRECISION, PerfTestRunner.DEFAULT_MAX_TIME_MILLIS);
+        }
+        testRunner.setAllocationCounting(allocations);
+        testRunner.setProfiledPhases(profilePhases);
+        testRunner.setIsolation(isolation);
+        testRunner.setSchedule(schedule, seed);
+        testRunner.run(type, tests);
+        try {
+            doneLatch.await();
+        } catch (InterruptedException e) {
+            testRunner.destroy();
+            throw e;
+        }
+        return testRunner.getResultFiles();
+    }
+
+    static PerfTest createTest(String backend) {
+        switch (backend.toLowerCase(Locale.US)) {
+            case "objectbox":
+                return new ObjectBoxPerfTest();
+            case "realm":
+                return new RealmPerfTest();
+            case "greendao":
+                return new GreendaoPerfTest();
+            case "room":
+                return new RoomPerfTest();
+            default:
+                throw new IllegalArgumentException("Unknown backend: " + backend);
+        }
+    }
+
+    static List<TestType> parseTypes(String argument) {
+        List<TestType> types = new ArrayList<>();
+        for (String name : splitArgument(argument)) {
+            if (name.equals("all")) {
+                for (TestType type : TestType.ALL) {
+                    types.add(type);
+                }
+                continue;
+            }
+            types.add(TestType.byShortName(name));
+        }
+        return types;
+    }
+
+    private static String[] splitArgument(String argument) {
+        return argument.trim().split("\\s*,\\s*");
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.objectbox.performanceapp;
+
+import java.util.Arrays;
+
+/**
+ * Consumes values read in access phases, like JMH's Blackhole: folding every value into a checksum
+ * keeps ART from optimizing reads away, and comparing checksums across backends verifies that they
+ * read identical data. The checksum does not depend on the order of entities. IDs are consumed
+ * without affecting it, as backends assign IDs differently.
+ */
+public class Blackhole {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private long entityHash = FNV_OFFSET;
+    private long checksum;
+    private long entityCount;
+    // Stores to fields of this (escaping) object cannot be optimized away
+    private long idSink;
+
+    public void consumeId(long id) {
+        idSink += id;
+    }
+
+    public void consume(boolean value) {
+        mix(value ? 1 : 0);
+    }
+
+    public void consume(long value) {
+        mix(value);
+    }
+
+    public void consume(float value) {
+        mix(Float.floatToIntBits(value));
+    }
+
+    public void consume(double value) {
+        mix(Double.doubleToLongBits(value));
+    }
+
+    /** Null and empty strings are equivalent, as not all backends distinguish them. */
+    public void consume(String value) {
+        mix(value == null ? 0 : value.hashCode());
+    }
+
+    /** Null and empty arrays are equivalent, as not all backends distinguish them. */
+    public void consume(byte[] value) {
+        mix(value == null || value.length == 0 ? 0 : Arrays.hashCode(value));
+    }
+
+    /** Completes the values of an entity; its hash is added to the checksum. */
+    public void endEntity() {
+        checksum += finish(entityHash);
+        entityHash = FNV_OFFSET;
+        entityCount++;
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+
+    public long getEntityCount() {
+        return entityCount;
+    }
+
+    public void reset() {
+        entityHash = FNV_OFFSET;
+        checksum = 0;
+        entityCount = 0;
+        idSink = 0;
+    }
+
+    private void mix(long value) {
+        entityHash = (entityHash ^ value) * FNV_PRIME;
+    }
+
+    /** Final mix of MurmurHash3, so the sum of entity hashes is well distributed. */
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
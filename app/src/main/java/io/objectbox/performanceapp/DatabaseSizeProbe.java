@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.objectbox.performanceapp;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Measures the size of the database files after each phase (see {@link PerfTest#getDatabaseFiles()})
+ * and relates it to the stored entities: bytes per entity and the space amplification in percent of
+ * the logical payload ({@link PerfTest#getPayloadBytesPerEntity()}), e.g. 250 if the files are 2.5
+ * times as large as the data. -1 if unavailable, e.g. if there are no entities or the test generated
+ * none.
+ */
+public class DatabaseSizeProbe implements PhaseProbe {
+
+    private static final String[] COLUMNS = {"db-bytes", "db-entities", "db-bytes-per-entity", "db-space-amplification-%"};
+
+    private final PerfTest test;
+
+    public DatabaseSizeProbe(PerfTest test) {
+        this.test = test;
+    }
+
+    @Override
+    public String[] columns() {
+        return COLUMNS;
+    }
+
+    @Override
+    public void begin() {
+    }
+
+    @Override
+    public void end(long[] values, int offset) {
+        List<File> files = test.getDatabaseFiles();
+        long bytes = files.isEmpty() ? -1 : 0;
+        for (File file : files) {
+            bytes += sizeOf(file);
+        }
+        long entities = test.getStoredEntities();
+        values[offset] = bytes;
+        values[offset + 1] = entities;
+        double payloadBytesPerEntity = test.getPayloadBytesPerEntity();
+        if (bytes != -1 && entities > 0) {
+            values[offset + 2] = bytes / entities;
+            values[offset + 3] = payloadBytesPerEntity > 0
+                    ? Math.round(bytes * 100 / (entities * payloadBytesPerEntity)) : -1;
+        } else {
+            values[offset + 2] = -1;
+            values[offset + 3] = -1;
+        }
+    }
+
+    /** Size of the file or all files of the directory in bytes; 0 if it does not exist. */
+    static long sizeOf(File file) {
+        File[] children = file.listFiles();
+        if (children == null) {
+            return file.length();
+        }
+        long size = 0;
+        for (File child : children) {
+            size += sizeOf(child);
+        }
+        return size;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.objectbox.performanceapp;
+
+import android.os.Build;
+import android.os.Debug;
+
+/**
+ * Counts garbage collections and their pause times during a phase using ART's runtime stats. Before
+ * Android 6.0 only a GC count is available (and -1 is reported for times).
+ */
+public class GcProbe implements PhaseProbe {
+
+    private static final String[] COLUMNS = {"gc-count", "gc-time-ms", "blocking-gc-count", "blocking-gc-time-ms"};
+
+    private final long[] startValues = new long[COLUMNS.length];
+
+    @Override
+    public String[] columns() {
+        return COLUMNS;
+    }
+
+    @Override
+    public void begin() {
+        // Each runtime stat is a new short string; there is no allocation-free API for GC stats
+        sample(startValues, 0);
+    }
+
+    @Override
+    public void end(long[] values, int offset) {
+        sample(values, offset);
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (values[offset + i] != -1) {
+                values[offset + i] -= startValues[i];
+            }
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void sample(long[] values, int offset) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            values[offset] = getRuntimeStat("art.gc.gc-count");
+            values[offset + 1] = getRuntimeStat("art.gc.gc-time");
+            values[offset + 2] = getRuntimeStat("art.gc.blocking-gc-count");
+            values[offset + 3] = getRuntimeStat("art.gc.blocking-gc-time");
+        } else {
+            // Only counts while allocation counting is enabled
+            values[offset] = Debug.getGlobalGcInvocationCount();
+            values[offset + 1] = -1;
+            values[offset + 2] = -1;
+            values[offset + 3] = -1;
+        }
+    }
+
+    /**
+     * Number of GCs since process start; before Android 6.0 only while allocation counting is enabled.
+     */
+    @SuppressWarnings("deprecation")
+    static long getGcCount() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return getRuntimeStat("art.gc.gc-count");
+        } else {
+            return Debug.getGlobalGcInvocationCount();
+        }
+    }
+
+    private static long getRuntimeStat(String name) {
+        String value = Debug.getRuntimeStat(name);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
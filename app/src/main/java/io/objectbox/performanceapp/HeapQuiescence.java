@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.objectbox.performanceapp;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Waits until the heap is quiet before a phase starts: after a GC, heap usage must not change, no
+ * other GC must happen and all pending finalizers must have run. Compared to GCs with fixed sleeps,
+ * this usually settles much faster and detects when the heap has not settled yet.
+ */
+public class HeapQuiescence {
+
+    /** Default upper limit of time spent settling per phase. */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 1000;
+
+    /** Changes of used heap up to this size are considered noise. */
+    private static final long HEAP_TOLERANCE_BYTES = 16 * 1024;
+    /** Time without GC calls used to check that the heap stays stable. */
+    private static final long POLL_MILLIS = 5;
+    /** Consecutive stable polls required. */
+    private static final int STABLE_POLLS = 2;
+
+    private final long timeoutNanos;
+    private final AtomicInteger finalizedCanaries = new AtomicInteger();
+    private int canaries;
+    private boolean settled;
+
+    public HeapQuiescence(long timeoutMillis) {
+        this.timeoutNanos = timeoutMillis * 1000000;
+    }
+
+    /**
+     * Triggers GC and finalization until the heap is stable or the timeout is reached.
+     *
+     * @return the time settling took in nanoseconds
+     */
+    public long settle() {
+        long startNanos = System.nanoTime();
+        Runtime runtime = Runtime.getRuntime();
+        long previousUsed = -1;
+        int stablePolls = 0;
+        settled = false;
+        do {
+            // The canary is finalized once the finalizer queue has been processed up to it
+            createCanary();
+            System.gc();
+            System.runFinalization();
+            long used = runtime.totalMemory() - runtime.freeMemory();
+            long gcCount = GcProbe.getGcCount();
+            try {
+                Thread.sleep(POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            long usedAfterPoll = runtime.totalMemory() - runtime.freeMemory();
+            boolean stable = finalizedCanaries.get() == canaries
+                    && GcProbe.getGcCount() == gcCount
+                    && Math.abs(usedAfterPoll - used) <= HEAP_TOLERANCE_BYTES
+                    && previousUsed != -1 && Math.abs(used - previousUsed) <= HEAP_TOLERANCE_BYTES;
+            previousUsed = used;
+            stablePolls = stable ? stablePolls + 1 : 0;
+            settled = stablePolls >= STABLE_POLLS;
+        } while (!settled && System.nanoTime() - startNanos < timeoutNanos);
+        return System.nanoTime() - startNanos;
+    }
+
+    /** Whether the last {@link #settle()} reached a stable heap before the timeout. */
+    public boolean isSettled() {
+        return settled;
+    }
+
+    private void createCanary() {
+        canaries++;
+        new FinalizerCanary(finalizedCanaries);
+    }
+
+    private static class FinalizerCanary {
+        private final AtomicInteger finalizedCounter;
+
+        FinalizerCanary(AtomicInteger finalizedCounter) {
+            this.finalizedCounter = finalizedCounter;
+        }
+
+        @Override
+        protected void finalize() throws Throwable {
+            finalizedCounter.incrementAndGet();
+            super.finalize();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.objectbox.performanceapp;
+
+/**
+ * Tracks the storage traffic of the process during a phase from /proc/self/io: characters read
+ * and written by syscalls (rchar/wchar, including page cache hits), bytes actually fetched from and
+ * sent to storage (read_bytes/write_bytes) and the number of read and write syscalls. Written
+ * bytes per entity processed by the phase ({@link Benchmark#getStoppedOperations()}) show the write
+ * amplification of each database. -1 if unavailable.
+ */
+public class IoProbe implements PhaseProbe {
+
+    private static final String[] KEYS = {"rchar", "wchar", "read_bytes", "write_bytes", "syscr", "syscw"};
+    private static final String[] COLUMNS = {
+            "io-rchar", "io-wchar", "io-read-bytes", "io-write-bytes", "io-syscr", "io-syscw",
+            "io-write-bytes-per-entity"
+    };
+    private static final int WRITE_BYTES = 3;
+
+    private final long[] startValues = new long[KEYS.length];
+    private final ProcFiles.Reader io = new ProcFiles.Reader("/proc/self/io");
+    private final Benchmark benchmark;
+
+    public IoProbe(Benchmark benchmark) {
+        this.benchmark = benchmark;
+    }
+
+    @Override
+    public String[] columns() {
+        return COLUMNS;
+    }
+
+    @Override
+    public void begin() {
+        io.read();
+        for (int i = 0; i < KEYS.length; i++) {
+            startValues[i] = io.getValue(KEYS[i]);
+        }
+    }
+
+    @Override
+    public void end(long[] values, int offset) {
+        io.read();
+        for (int i = 0; i < KEYS.length; i++) {
+            long value = io.getValue(KEYS[i]);
+            values[offset + i] = value != -1 && startValues[i] != -1 ? value - startValues[i] : -1;
+        }
+        long writeBytes = values[offset + WRITE_BYTES];
+        long entities = benchmark.getStoppedOperations();
+        values[offset + KEYS.length] = writeBytes != -1 && entities > 0 ? writeBytes / entities : -1;
+    }
+}
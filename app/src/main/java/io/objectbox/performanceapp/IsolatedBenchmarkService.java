@@ -0,0 +1,328 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.objectbox.performanceapp;
+
+import android.app.ActivityManager;
+import android.app.Service;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.Process;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a single test in a dedicated process (see android:process in the manifest), so it does not
+ * share heap, JIT state, native allocations or loaded libraries with other backends. The process
+ * kills itself once the coordinator unbinds, so each request gets a fresh one. Logs, result files
+ * and checksums are streamed back to the coordinator's {@link Messenger}; see
+ * {@link #run(Context, Bundle, PerfTestRunner.LogListener, Cancellation)}.
+ */
+public class IsolatedBenchmarkService extends Service {
+
+    private static final String TAG = "PERF";
+    private static final String PROCESS_SUFFIX = ":bench";
+    private static final long PROCESS_EXIT_TIMEOUT_MILLIS = 10000;
+    /** After cancelling, time to wait for the process to record the cancelled run before killing it. */
+    private static final long CANCEL_TIMEOUT_MILLIS = 10000;
+
+    static final int MSG_RUN = 1;
+    static final int MSG_LOG = 2;
+    static final int MSG_DONE = 3;
+    static final int MSG_CANCEL = 4;
+
+    static final String KEY_TEST_CLASS = "testClass";
+    static final String KEY_TYPE = "type";
+    static final String KEY_COUNT = "count";
+    static final String KEY_RUNS = "runs";
+    static final String KEY_FIRST_RUN = "firstRun";
+    static final String KEY_WRITE_SUMMARY = "writeSummary";
+    static final String KEY_ADAPTIVE = "adaptive";
+    static final String KEY_ALLOCATIONS = "allocations";
+    static final String KEY_PROFILE_PHASES = "profilePhases";
+    static final String KEY_RUN_INFO_KEYS = "runInfoKeys";
+    static final String KEY_RUN_INFO_VALUES = "runInfoValues";
+    static final String KEY_TEXT = "text";
+    static final String KEY_ERROR = "error";
+    static final String KEY_FILES = "files";
+    static final String KEY_CHECKSUM_KEYS = "checksumKeys";
+    static final String KEY_CHECKSUMS = "checksums";
+
+    /** Whether the coordinator gave up on the run, e.g. because the user left the app. */
+    interface Cancellation {
+        boolean isCancelled();
+    }
+
+    /** What the benchmark process reported back. */
+    static class Result {
+        final List<File> files = new ArrayList<>();
+        /** By run and phase, e.g. "2 access". */
+        final Map<String, Long> checksums = new HashMap<>();
+    }
+
+    private Messenger messenger;
+    private PerfTestRunner testRunner;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        messenger = new Messenger(new Handler(Looper.getMainLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                if (msg.what == MSG_RUN) {
+                    startRun(msg.getData(), msg.replyTo);
+                } else if (msg.what == MSG_CANCEL) {
+                    if (testRunner != null) {
+                        testRunner.destroy();
+                    }
+                } else {
+                    super.handleMessage(msg);
+                }
+            }
+        });
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return messenger.getBinder();
+    }
+
+    @Override
+    public void onDestroy() {
+        if (testRunner != null) {
+            testRunner.destroy();
+        }
+        super.onDestroy();
+        // The next request must not reuse this process (heap, JIT, loaded libraries)
+        Process.killProcess(Process.myPid());
+    }
+
+    private void startRun(Bundle request, final Messenger replyTo) {
+        if (testRunner != null) {
+            reply(replyTo, MSG_LOG, logData("Benchmark process is already running a test", true));
+            return;
+        }
+        PerfTest test;
+        try {
+            test = (PerfTest) Class.forName(request.getString(KEY_TEST_CLASS)).newInstance();
+        } catch (Exception e) {
+            reply(replyTo, MSG_LOG, logData("Could not create test: " + e, true));
+            reply(replyTo, MSG_DONE, new Bundle());
+            return;
+        }
+        TestType type = TestType.byShortName(request.getString(KEY_TYPE));
+
+        final PerfTestRunner runner = new PerfTestRunner(this, () -> {
+            Bundle data = new Bundle();
+            ArrayList<String> paths = new ArrayList<>();
+            for (File file : testRunner.getResultFiles()) {
+                paths.add(file.getAbsolutePath());
+            }
+            data.putStringArrayList(KEY_FILES, paths);
+            Map<String, Long> checksums = testRunner.getChecksums();
+            ArrayList<String> checksumKeys = new ArrayList<>(checksums.keySet());
+            long[] checksumValues = new long[checksumKeys.size()];
+            for (int i = 0; i < checksumValues.length; i++) {
+                checksumValues[i] = checksums.get(checksumKeys.get(i));
+            }
+            data.putStringArrayList(KEY_CHECKSUM_KEYS, checksumKeys);
+            data.putLongArray(KEY_CHECKSUMS, checksumValues);
+            reply(replyTo, MSG_DONE, data);
+        }, null, request.getInt(KEY_RUNS), request.getInt(KEY_COUNT));
+        runner.setFirstRun(request.getInt(KEY_FIRST_RUN, 1));
+        runner.setWriteSummary(request.getBoolean(KEY_WRITE_SUMMARY, true));
+        if (request.getBoolean(KEY_ADAPTIVE)) {
+            runner.setAdaptive(PerfTestRunner.DEFAULT_TARGET_PRECISION, PerfTestRunner.DEFAULT_MAX_TIME_MILLIS);
+        }
+        runner.setAllocationCounting(request.getBoolean(KEY_ALLOCATIONS));
+        runner.setProfiledPhases(request.getStringArray(KEY_PROFILE_PHASES));
+        String[] runInfoKeys = request.getStringArray(KEY_RUN_INFO_KEYS);
+        String[] runInfoValues = request.getStringArray(KEY_RUN_INFO_VALUES);
+        if (runInfoKeys != null && runInfoValues != null) {
+            for (int i = 0; i < runInfoKeys.length; i++) {
+                runner.setRunInfo(runInfoKeys[i], runInfoValues[i]);
+            }
+        }
+        runner.setLogListener((text, error) -> reply(replyTo, MSG_LOG, logData(text, error)));
+        testRunner = runner;
+        runner.run(type, Collections.singletonList(test));
+    }
+
+    private static Bundle logData(String text, boolean error) {
+        Bundle data = new Bundle();
+        data.putString(KEY_TEXT, text);
+        data.putBoolean(KEY_ERROR, error);
+        return data;
+    }
+
+    private static void reply(Messenger replyTo, int what, Bundle data) {
+        Message message = Message.obtain(null, what);
+        message.setData(data);
+        try {
+            replyTo.send(message);
+        } catch (RemoteException e) {
+            Log.w(TAG, "Coordinator is gone", e);
+        }
+    }
+
+    /**
+     * Runs the requested test (see the KEY_ constants) in a fresh benchmark process and blocks until
+     * it is done; the process is gone once this returns. Must not be called on the main thread.
+     */
+    static Result run(Context context, Bundle request, final PerfTestRunner.LogListener logListener,
+                      Cancellation cancellation) throws InterruptedException {
+        // A previous process may still be exiting; binding now would reuse it
+        waitForProcessExit(context);
+
+        final Result result = new Result();
+        final CountDownLatch doneLatch = new CountDownLatch(1);
+        HandlerThread replyThread = new HandlerThread("bench-replies");
+        replyThread.start();
+        final Messenger replyTo = new Messenger(new Handler(replyThread.getLooper()) {
+            @Override
+            public void handleMessage(Message msg) {
+                Bundle data = msg.getData();
+                if (msg.what == MSG_LOG) {
+                    logListener.onLog(data.getString(KEY_TEXT), data.getBoolean(KEY_ERROR));
+                } else if (msg.what == MSG_DONE) {
+                    List<String> paths = data.getStringArrayList(KEY_FILES);
+                    if (paths != null) {
+                        for (String path : paths) {
+                            result.files.add(new File(path));
+                        }
+                    }
+                    List<String> checksumKeys = data.getStringArrayList(KEY_CHECKSUM_KEYS);
+                    long[] checksums = data.getLongArray(KEY_CHECKSUMS);
+                    if (checksumKeys != null && checksums != null) {
+                        for (int i = 0; i < checksumKeys.size(); i++) {
+                            result.checksums.put(checksumKeys.get(i), checksums[i]);
+                        }
+                    }
+                    doneLatch.countDown();
+                } else {
+                    super.handleMessage(msg);
+                }
+            }
+        });
+
+        final AtomicBoolean requestSent = new AtomicBoolean();
+        final AtomicReference<Messenger> serviceMessenger = new AtomicReference<>();
+        ServiceConnection connection = new ServiceConnection() {
+            @Override
+            public void onServiceConnected(ComponentName name, IBinder service) {
+                if (!requestSent.compareAndSet(false, true)) {
+                    return; // Restarted after a crash; the coordinator gives up on this request
+                }
+                Message message = Message.obtain(null, MSG_RUN);
+                message.setData(request);
+                message.replyTo = replyTo;
+                try {
+                    serviceMessenger.set(new Messenger(service));
+                    serviceMessenger.get().send(message);
+                } catch (RemoteException e) {
+                    logListener.onLog("Could not start benchmark process: " + e, true);
+                    doneLatch.countDown();
+                }
+            }
+
+            @Override
+            public void onServiceDisconnected(ComponentName name) {
+                logListener.onLog("Benchmark process died", true);
+                doneLatch.countDown();
+            }
+        };
+
+        Intent intent = new Intent(context, IsolatedBenchmarkService.class);
+        try {
+            if (!context.bindService(intent, connection, Context.BIND_AUTO_CREATE)) {
+                throw new RuntimeException("Could not bind benchmark service");
+            }
+            try {
+                while (!doneLatch.await(1, TimeUnit.SECONDS)) {
+                    if (cancellation.isCancelled()) {
+                        cancel(serviceMessenger.get(), logListener);
+                        if (!doneLatch.await(CANCEL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                            logListener.onLog("Benchmark process did not stop, killing it", true);
+                        }
+                        break;
+                    }
+                }
+            } finally {
+                // Destroys the service, which kills its process
+                context.unbindService(connection);
+            }
+        } finally {
+            replyThread.quit();
+        }
+        return result;
+    }
+
+    /** Asks the process to stop at its next cancellation checkpoint and record the cancelled run. */
+    private static void cancel(Messenger service, PerfTestRunner.LogListener logListener) {
+        if (service == null) {
+            return;
+        }
+        try {
+            service.send(Message.obtain(null, MSG_CANCEL));
+        } catch (RemoteException e) {
+            logListener.onLog("Could not cancel benchmark process: " + e, true);
+        }
+    }
+
+    private static void waitForProcessExit(Context context) throws InterruptedException {
+        String processName = context.getPackageName() + PROCESS_SUFFIX;
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        long deadline = SystemClock.elapsedRealtime() + PROCESS_EXIT_TIMEOUT_MILLIS;
+        while (SystemClock.elapsedRealtime() < deadline) {
+            boolean running = false;
+            List<ActivityManager.RunningAppProcessInfo> processes = activityManager.getRunningAppProcesses();
+            if (processes != null) {
+                for (ActivityManager.RunningAppProcessInfo process : processes) {
+                    if (processName.equals(process.processName)) {
+                        running = true;
+                    }
+                }
+            }
+            if (!running) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        Log.w(TAG, "Benchmark process still running after " + PROCESS_EXIT_TIMEOUT_MILLIS + " ms");
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.objectbox.performanceapp;
+
+import java.util.Arrays;
+
+/**
+ * Fixed memory histogram of latencies in nanoseconds, organized like HdrHistogram: values are
+ * counted in log-linear buckets, so each value is tracked with a relative precision of better than
+ * 1% across the full long range. Recording does not allocate, so it can be used within timed phases.
+ */
+public class LatencyHistogram {
+
+    /** 256 linear sub-buckets per power of two: relative error below 1/128. */
+    private static final int SUB_BUCKET_BITS = 8;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final int BUCKET_COUNT = 64 - SUB_BUCKET_BITS + 1;
+
+    private final long[] counts = new long[(BUCKET_COUNT + 1) * SUB_BUCKET_HALF_COUNT];
+    private long totalCount;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[indexOf(value)]++;
+        totalCount++;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Adds all values recorded by the given histogram, e.g. to combine the histograms of multiple
+     * threads.
+     */
+    public void add(LatencyHistogram other) {
+        if (other.totalCount == 0) {
+            return;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the value at the given percentile (0-100), e.g. 99.9. Like HdrHistogram, the highest
+     * value equivalent to the bucket is reported, but never more than the max recorded value.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        double fraction = Math.min(Math.max(percentile, 0), 100) / 100;
+        long countAtPercentile = Math.max(1, (long) Math.ceil(fraction * totalCount));
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= countAtPercentile) {
+                return Math.min(highestEquivalentValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        // Bucket 1 holds [256, 512) with a resolution of 2, bucket 2 [512, 1024) with 4 and so on
+        int bucket = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (value >>> bucket);
+        return bucket * SUB_BUCKET_HALF_COUNT + subBucket;
+    }
+
+    private static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int bucket = (index >> (SUB_BUCKET_BITS - 1)) - 1;
+        long subBucket = index - bucket * SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << bucket) - 1;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.objectbox.performanceapp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free ring buffer of log lines: any thread can add lines without blocking, a single
+ * consumer (the UI thread) polls them in batches. If the consumer falls behind and the buffer is
+ * full, lines are dropped and counted instead of stalling the benchmark thread.
+ */
+class LogBuffer {
+
+    static class Entry {
+        final String text;
+        final boolean error;
+
+        Entry(String text, boolean error) {
+            this.text = text;
+            this.error = error;
+        }
+    }
+
+    private final Entry[] entries;
+    /**
+     * Per slot: equals the position to write for a free slot, position + 1 once the entry was
+     * published; the volatile write publishes the entry to the consumer.
+     */
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    /** Only accessed by the consumer. */
+    private long head;
+
+    /** @param capacity rounded up to a power of two */
+    LogBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        entries = new Entry[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+    }
+
+    /** Adds a line; returns false if the buffer was full and the line got dropped. */
+    boolean offer(String text, boolean error) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    entries[index] = new Entry(text, error);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                dropped.incrementAndGet();
+                return false;
+            } else {
+                // Another producer claimed this position
+                position = tail.get();
+            }
+        }
+    }
+
+    /** Next line or null if there is none (yet); consumer only. */
+    Entry poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        Entry entry = entries[index];
+        entries[index] = null;
+        sequences.set(index, head + entries.length);
+        head++;
+        return entry;
+    }
+
+    /** Returns and resets the number of dropped lines. */
+    long takeDropped() {
+        return dropped.getAndSet(0);
+    }
+}
@@ -30,6 +30,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import io.objectbox.performanceapp.PerfTestRunner.Callback;
+import io.objectbox.performanceapp.PerfTestRunner.Isolation;
+import io.objectbox.performanceapp.PerfTestRunner.Schedule;
 import io.objectbox.performanceapp.databinding.ActivityMainBinding;
 import io.objectbox.performanceapp.greendao.GreendaoPerfTest;
 import io.objectbox.performanceapp.objectbox.ObjectBoxPerfTest;
@@ -41,6 +43,11 @@ public class MainActivity extends Activity implements Callback {
     private static final String PREF_TYPE = "io.objectbox.performance.type";
     private static final String PREF_RUNS = "io.objectbox.performance.runs";
     private static final String PREF_COUNT = "io.objectbox.performance.count";
+    private static final String PREF_ADAPTIVE = "io.objectbox.performance.adaptive";
+    private static final String PREF_ALLOCATIONS = "io.objectbox.performance.allocations";
+    private static final String PREF_PROFILE_PHASES = "io.objectbox.performance.profilePhases";
+    private static final String PREF_ISOLATION = "io.objectbox.performance.isolation";
+    private static final String PREF_SCHEDULE = "io.objectbox.performance.schedule";
 
     private ActivityMainBinding binding;
     private PerfTestRunner testRunner;
@@ -69,8 +76,14 @@ public class MainActivity extends Activity implements Callback {
 
             int runs = getIntegerFromEditTextOrZero(binding.editTextRuns);
             int numberEntities = getIntegerFromEditTextOrZero(binding.editTextNumberEntities);
-
-            runTests(type, runs, numberEntities, objectBox, realm, greenDao, room);
+            boolean adaptive = binding.checkBoxAdaptive.isChecked();
+            boolean allocations = binding.checkBoxAllocations.isChecked();
+            String[] profilePhases = getProfilePhases();
+            Isolation isolation = (Isolation) binding.spinnerIsolation.getSelectedItem();
+            Schedule schedule = (Schedule) binding.spinnerSchedule.getSelectedItem();
+
+            runTests(type, runs, numberEntities, adaptive, allocations, profilePhases, isolation, schedule,
+                    objectBox, realm, greenDao, room);
         });
 
         ArrayAdapter<TestType> adapter = new ArrayAdapter<>(
@@ -81,6 +94,22 @@ public class MainActivity extends Activity implements Callback {
         adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
         binding.spinnerTestType.setAdapter(adapter);
 
+        ArrayAdapter<Isolation> isolationAdapter = new ArrayAdapter<>(
+                this,
+                android.R.layout.simple_spinner_item,
+                Isolation.values()
+        );
+        isolationAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        binding.spinnerIsolation.setAdapter(isolationAdapter);
+
+        ArrayAdapter<Schedule> scheduleAdapter = new ArrayAdapter<>(
+                this,
+                android.R.layout.simple_spinner_item,
+                Schedule.values()
+        );
+        scheduleAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        binding.spinnerSchedule.setAdapter(scheduleAdapter);
+
         // Restore type, runs and count or set defaults.
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
         int previousTypeSelection = prefs.getInt(PREF_TYPE, 0);
@@ -93,6 +122,35 @@ public class MainActivity extends Activity implements Callback {
                 .setText(String.valueOf(prefs.getInt(PREF_RUNS, 1)));
         binding.editTextNumberEntities
                 .setText(String.valueOf(prefs.getInt(PREF_COUNT, 1000000)));
+        binding.checkBoxAdaptive
+                .setChecked(prefs.getBoolean(PREF_ADAPTIVE, false));
+        binding.checkBoxAllocations
+                .setChecked(prefs.getBoolean(PREF_ALLOCATIONS, false));
+        binding.editTextProfilePhases
+                .setText(prefs.getString(PREF_PROFILE_PHASES, ""));
+        int previousIsolation = prefs.getInt(PREF_ISOLATION, 0);
+        if (previousIsolation > Isolation.values().length - 1 || previousIsolation < 0) {
+            previousIsolation = 0;
+        }
+        binding.spinnerIsolation
+                .setSelection(previousIsolation, false);
+        int previousSchedule = prefs.getInt(PREF_SCHEDULE, 0);
+        if (previousSchedule > Schedule.values().length - 1 || previousSchedule < 0) {
+            previousSchedule = 0;
+        }
+        binding.spinnerSchedule
+                .setSelection(previousSchedule, false);
+    }
+
+    /**
+     * Comma separated phase names, e.g. "load, access"; empty if none.
+     */
+    private String[] getProfilePhases() {
+        String text = binding.editTextProfilePhases.getText().toString().trim();
+        if (text.isEmpty()) {
+            return new String[0];
+        }
+        return text.split("\\s*,\\s*");
     }
 
     private int getIntegerFromEditTextOrZero(EditText editText) {
@@ -114,6 +172,11 @@ public class MainActivity extends Activity implements Callback {
                         getIntegerFromEditTextOrZero(binding.editTextRuns))
                 .putInt(PREF_COUNT,
                         getIntegerFromEditTextOrZero(binding.editTextNumberEntities))
+                .putBoolean(PREF_ADAPTIVE, binding.checkBoxAdaptive.isChecked())
+                .putBoolean(PREF_ALLOCATIONS, binding.checkBoxAllocations.isChecked())
+                .putString(PREF_PROFILE_PHASES, binding.editTextProfilePhases.getText().toString())
+                .putInt(PREF_ISOLATION, binding.spinnerIsolation.getSelectedItemPosition())
+                .putInt(PREF_SCHEDULE, binding.spinnerSchedule.getSelectedItemPosition())
                 .apply();
     }
 
@@ -126,7 +189,9 @@ public class MainActivity extends Activity implements Callback {
         super.onDestroy();
     }
 
-    private void runTests(TestType type, int runs, int numberEntities, boolean objectBox, boolean realm, boolean greenDao, boolean room) {
+    private void runTests(TestType type, int runs, int numberEntities, boolean adaptive, boolean allocations,
+                          String[] profilePhases, Isolation isolation, Schedule schedule,
+                          boolean objectBox, boolean realm, boolean greenDao, boolean room) {
         binding.textViewResults.setText("");
         List<PerfTest> tests = new ArrayList<>();
         if (objectBox) {
@@ -142,6 +207,14 @@ public class MainActivity extends Activity implements Callback {
             tests.add(new RoomPerfTest());
         }
         testRunner = new PerfTestRunner(this, this, binding.textViewResults, runs, numberEntities);
+        if (adaptive) {
+            testRunner.setAdaptive(PerfTestRunner.DEFAULT_TARGET_PRECISION, PerfTestRunner.DEFAULT_MAX_TIME_MILLIS);
+        }
+        testRunner.setAllocationCounting(allocations);
+        testRunner.setProfiledPhases(profilePhases);
+        testRunner.setIsolation(isolation);
+        // The seed is part of the results ("random-<seed>"), so the order can be repeated
+        testRunner.setSchedule(schedule, System.currentTimeMillis());
         testRunner.run(type, tests);
     }
 
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.objectbox.performanceapp;
+
+import android.os.Debug;
+import android.util.Log;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Tracks memory beyond the Java heap, which matters for native stores like ObjectBox and Realm:
+ * the native heap, the total PSS of the process and the peak RSS during a phase. For the latter,
+ * the kernel's peak RSS ("VmHWM") is reset at phase start if permitted; otherwise it is the peak
+ * since process start and its growth during the phase is unknown (-1). Values are in kB; -1 if
+ * unavailable.
+ */
+public class NativeMemoryProbe implements PhaseProbe {
+
+    private static final String[] COLUMNS = {
+            "native-heap-delta-kb", "pss-delta-kb", "pss-kb", "rss-peak-kb", "rss-peak-growth-kb"
+    };
+    /** "5" resets the peak RSS to the current RSS (Linux 4.0+). */
+    private static final byte[] RESET_PEAK = {'5'};
+
+    private final Debug.MemoryInfo memoryInfo = new Debug.MemoryInfo();
+    private final ProcFiles.Reader status = new ProcFiles.Reader("/proc/self/status");
+    private long nativeHeapStart;
+    private long pssStart;
+    private long rssStart;
+    /** Kept open, so resetting the peak RSS before each phase does not allocate. */
+    private FileOutputStream clearRefs;
+    private boolean peakResettable;
+
+    public NativeMemoryProbe() {
+        try {
+            clearRefs = new FileOutputStream("/proc/self/clear_refs");
+            peakResettable = true;
+        } catch (IOException e) {
+            Log.d(Benchmark.TAG, "Could not open /proc/self/clear_refs: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String[] columns() {
+        return COLUMNS;
+    }
+
+    @Override
+    public void begin() {
+        nativeHeapStart = Debug.getNativeHeapAllocatedSize();
+        pssStart = getTotalPss();
+        if (peakResettable) {
+            try {
+                clearRefs.write(RESET_PEAK);
+            } catch (IOException e) {
+                // Older kernels reject it
+                peakResettable = false;
+            }
+        }
+        status.read();
+        rssStart = status.getValue("VmRSS");
+    }
+
+    @Override
+    public void end(long[] values, int offset) {
+        status.read();
+        long rssPeak = status.getValue("VmHWM");
+        long pss = getTotalPss();
+        values[offset] = (Debug.getNativeHeapAllocatedSize() - nativeHeapStart) / 1024;
+        values[offset + 1] = pss - pssStart;
+        values[offset + 2] = pss;
+        values[offset + 3] = rssPeak;
+        values[offset + 4] = peakResettable && rssPeak != -1 && rssStart != -1 ? rssPeak - rssStart : -1;
+    }
+
+    private long getTotalPss() {
+        Debug.getMemoryInfo(memoryInfo);
+        return memoryInfo.getTotalPss();
+    }
+}
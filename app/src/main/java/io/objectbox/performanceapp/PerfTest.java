@@ -19,21 +19,64 @@ package io.objectbox.performanceapp;
 import android.content.Context;
 import androidx.annotation.CallSuper;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public abstract class PerfTest {
 
+    /** Upper limit of individual operations per phase for {@link TestType#POINT_OPERATIONS}. */
+    public static final int POINT_OPERATIONS = 10000;
+
+    /** Threads of concurrent phases of {@link TestType#POINT_OPERATIONS}, e.g. "get-concurrent". */
+    public static final int CONCURRENT_THREADS = 4;
+
+    /**
+     * Logical size of the scalars of a test entity (including the ID); strings (ASCII, so a byte per
+     * char) and byte arrays add their length (see {@link #takeGeneratedBytes(long)}).
+     */
+    public static final int SCALAR_PAYLOAD_BYTES = 36;
+
+    /** Loops check for cancellation every this many iterations (see {@link #checkCancelled(int)}). */
+    private static final int CANCELLATION_CHECK_INTERVAL = 1024;
+
+    /** A single operation of a latency benchmark, e.g. one get by ID. */
+    public interface Operation {
+        void run(int index);
+    }
+
     protected Random random;
     protected Context context;
     protected PerfTestRunner testRunner;
     protected int numberEntities;
     protected Benchmark benchmark;
+    /** Number of the current run, starting at 1. */
+    protected int run = 1;
+    /** Consumes values read by access methods; not thread-safe. */
+    protected final Blackhole blackhole = new Blackhole();
+    private long storedEntities = -1;
+    // Bytes of strings and byte arrays generated since the last takeGeneratedBytes()
+    private long generatedBytes;
+    // Payload of all entities generated in this run, for the bytes per entity
+    private long payloadBytes;
+    private long payloadEntities;
 
     @CallSuper
     public void setUp(Context context, PerfTestRunner testRunner) {
-        random = new Random();
+        // Seed per run: all backends get identical data in the same run, which makes access checksums
+        // comparable, while each run still adds new values
+        random = new Random(RandomValues.SEED + run);
         this.context = context.getApplicationContext();
         this.testRunner = testRunner;
+        storedEntities = -1;
+        generatedBytes = 0;
+        payloadBytes = 0;
+        payloadEntities = 0;
     }
 
     public void tearDown() {
@@ -45,22 +88,129 @@ public abstract class PerfTest {
 
     public abstract String name();
 
+    /**
+     * Cancellation checkpoint: throws {@link BenchmarkCancelledException} if the runner was cancelled.
+     * Phases stopped before are still recorded (with status "cancelled").
+     */
+    protected void checkCancelled() {
+        if (testRunner != null && testRunner.isCancelled()) {
+            throw new BenchmarkCancelledException();
+        }
+    }
+
+    /**
+     * Cancellation checkpoint for long loops, e.g. preparing entities; only checks every
+     * {@value #CANCELLATION_CHECK_INTERVAL} iterations.
+     */
+    protected void checkCancelled(int iteration) {
+        if (iteration % CANCELLATION_CHECK_INTERVAL == 0) {
+            checkCancelled();
+        }
+    }
+
+    /**
+     * Files and directories of the database, e.g. to measure its size on disk; files may not exist.
+     */
+    public List<File> getDatabaseFiles() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Number of entities currently stored; -1 if unknown. Tracked by the test as it inserts and deletes
+     * entities, so probes can read it after each phase without querying the database.
+     */
+    public long getStoredEntities() {
+        return storedEntities;
+    }
+
+    /** Sets the number of stored entities, e.g. counted once in {@link #setUp(Context, PerfTestRunner)}. */
+    protected void setStoredEntities(long count) {
+        storedEntities = count;
+    }
+
+    /** Adds inserted (or, if negative, deleted) entities to the stored entities, if known. */
+    protected void addStoredEntities(long count) {
+        if (storedEntities != -1) {
+            storedEntities += count;
+        }
+    }
+
+    /**
+     * The SQLite database with the given name and its journal files.
+     */
+    protected List<File> getSqliteDatabaseFiles(String name) {
+        File file = context.getDatabasePath(name);
+        List<File> files = new ArrayList<>();
+        files.add(file);
+        for (String suffix : new String[]{"-wal", "-shm", "-journal"}) {
+            files.add(new File(file.getPath() + suffix));
+        }
+        return files;
+    }
+
     public abstract void run(TestType type);
 
     public void setNumberEntities(int numberEntities) {
         this.numberEntities = numberEntities;
     }
 
+    /**
+     * Sets the number of the next run; call before {@link #setUp(Context, PerfTestRunner)}.
+     */
+    public void setRun(int run) {
+        this.run = run;
+    }
+
     public void setBenchmark(Benchmark benchmark) {
         this.benchmark = benchmark;
     }
 
+    /**
+     * Starts a phase; if a phase is already started, the new one is nested within it and reported as
+     * e.g. "insert/put". Nested phases must be stopped before their parent.
+     */
     protected void startBenchmark(String name) {
+        checkCancelled();
+        if (!benchmark.isTiming()) {
+            // Not for nested phases, which would wipe the values their parent collected so far
+            blackhole.reset();
+        }
         benchmark.start(name);
     }
 
+    /**
+     * Stops the current phase; its throughput is based on the number of entities of the test.
+     */
     protected void stopBenchmark() {
-        log(benchmark.stop());
+        benchmark.stop();
+        recordChecksum();
+    }
+
+    /**
+     * Stops the current phase, which processed the given number of entities, e.g. a query.
+     */
+    protected void stopBenchmark(long operations) {
+        benchmark.stop(operations);
+        recordChecksum();
+    }
+
+    /**
+     * Stops the current phase, which wrote the given number of entities with the given payload (see
+     * {@link #takeGeneratedBytes(long)}).
+     */
+    protected void stopBenchmark(long operations, long bytes) {
+        benchmark.stop(operations, bytes);
+        recordChecksum();
+    }
+
+    /**
+     * If entities were accessed in the phase just stopped, records the checksum of their values. For
+     * nested phases, it includes the values accessed in the top level phase so far.
+     */
+    private void recordChecksum() {
+        if (blackhole.getEntityCount() > 0) {
+            benchmark.setChecksum(blackhole.getChecksum(), blackhole.getEntityCount());
+        }
     }
 
     /**
@@ -72,17 +222,146 @@ public abstract class PerfTest {
         stopBenchmark();
     }
 
+    /**
+     * Convenience for {@link #startBenchmark(String)} followed by {@link #stopBenchmark(long)}.
+     */
+    protected void benchmark(String name, long operations, Runnable runnable) {
+        startBenchmark(name);
+        runnable.run();
+        stopBenchmark(operations);
+    }
+
+    /**
+     * Times the given number of individual operations as one phase. The latency of each operation is
+     * recorded in addition, so the phase gets percentile columns.
+     */
+    protected void benchmarkOperations(String name, int count, Operation operation) {
+        benchmarkOperations(name, count, -1, operation);
+    }
+
+    /**
+     * Like {@link #benchmarkOperations(String, int, Operation)} for operations writing the given
+     * payload bytes in total; -1 if unknown.
+     */
+    protected void benchmarkOperations(String name, int count, long bytes, Operation operation) {
+        startBenchmark(name);
+        for (int i = 0; i < count; i++) {
+            checkCancelled(i);
+            long startNanos = System.nanoTime();
+            operation.run(i);
+            benchmark.recordLatency(System.nanoTime() - startNanos);
+        }
+        stopBenchmark(count, bytes);
+    }
+
+    /**
+     * Times the given number of operations executed by multiple threads as one phase; each thread
+     * runs every n-th index, so the operation must be thread-safe (and cannot use the blackhole; keep
+     * results in a slot per index instead). Besides the combined latency percentiles, the phase gets
+     * the throughput of all threads and per thread (see {@link ThreadRecorder}).
+     */
+    protected void benchmarkConcurrent(String name, int threadCount, int count, Operation operation) {
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final AtomicBoolean started = new AtomicBoolean();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int firstIndex = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    startLatch.await();
+                    if (!started.get()) {
+                        return;
+                    }
+                    ThreadRecorder recorder = benchmark.threadRecorder();
+                    for (int i = firstIndex; i < count; i += threadCount) {
+                        checkCancelled(i / threadCount);
+                        long startNanos = System.nanoTime();
+                        operation.run(i);
+                        recorder.record(System.nanoTime() - startNanos);
+                    }
+                    recorder.finish();
+                } catch (Throwable e) {
+                    error.compareAndSet(null, e);
+                }
+            }, name + "-" + (t + 1));
+            threads[t].start();
+        }
+
+        try {
+            startBenchmark(name);
+            started.set(true);
+        } finally {
+            // If the phase did not start (e.g. the run was cancelled), workers return right away
+            startLatch.countDown();
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        stopBenchmark();
+        if (error.get() instanceof BenchmarkCancelledException) {
+            throw (BenchmarkCancelledException) error.get();
+        } else if (error.get() != null) {
+            throw new RuntimeException("Operation failed in phase " + name, error.get());
+        }
+    }
+
+    /**
+     * Number of operations per phase for {@link TestType#POINT_OPERATIONS}.
+     */
+    protected int pointOperationsCount() {
+        return Math.min(numberEntities, POINT_OPERATIONS);
+    }
+
+    /**
+     * Pre-computes random indexes, so no random values need to be generated within timed phases.
+     */
+    protected int[] randomIndexes(int count, int bound) {
+        int[] indexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = random.nextInt(bound);
+        }
+        return indexes;
+    }
+
     public String randomString() {
-        return RandomValues.createRandomString(random, 0, 100);
+        String string = RandomValues.createRandomString(random, 0, 100);
+        generatedBytes += string.length();
+        return string;
     }
 
     public byte[] randomBytes() {
         int length = random.nextInt(100);
         byte[] bytes = new byte[length];
         random.nextBytes(bytes);
+        generatedBytes += length;
         return bytes;
     }
 
+    /**
+     * Returns the payload bytes of the given number of entities generated since the last call: their
+     * scalars plus the actual strings and byte arrays. Call it before the phase writing them and pass
+     * the result to {@link #stopBenchmark(long, long)}. Phases stopped without bytes, e.g. loading
+     * entities, get the average payload of all entities generated in this run.
+     */
+    protected long takeGeneratedBytes(long entities) {
+        long bytes = entities * SCALAR_PAYLOAD_BYTES + generatedBytes;
+        generatedBytes = 0;
+        payloadBytes += bytes;
+        payloadEntities += entities;
+        benchmark.setBytesPerOperation(getPayloadBytesPerEntity());
+        return bytes;
+    }
+
+    /** Average payload of the entities generated in this run; -1 if none were generated (yet). */
+    public double getPayloadBytesPerEntity() {
+        return payloadEntities > 0 ? (double) payloadBytes / payloadEntities : -1;
+    }
+
     public void allTestsComplete() {
     }
 
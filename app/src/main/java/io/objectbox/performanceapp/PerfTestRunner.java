@@ -16,23 +16,36 @@
 
 package io.objectbox.performanceapp;
 
-import android.app.Activity;
 import android.app.ActivityManager;
+import android.content.Context;
 import android.graphics.Color;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.text.Spannable;
-import android.text.SpannableString;
+import android.text.SpannableStringBuilder;
 import android.text.style.ForegroundColorSpan;
 import android.util.Log;
 import android.widget.ScrollView;
 import android.widget.TextView;
 
+import androidx.annotation.Nullable;
+
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created by Markus on 01.10.2016.
@@ -40,47 +53,231 @@ import java.util.concurrent.TimeUnit;
 
 public class PerfTestRunner {
 
+    /** Default for adaptive runs: stop once all phases are known within ±2% (95% confidence). */
+    public static final double DEFAULT_TARGET_PRECISION = 0.02;
+    /** Default time budget of adaptive runs per test. */
+    public static final long DEFAULT_MAX_TIME_MILLIS = 30 * 60 * 1000;
+    /** Adaptive runs do not stop before this many runs even if the precision looks good. */
+    private static final int MIN_ADAPTIVE_RUNS = 3;
+    /** Log lines buffered for the UI; if it cannot keep up, further lines are dropped. */
+    private static final int LOG_BUFFER_CAPACITY = 4096;
+    /** The UI appends buffered log lines at most this often, so it does little work during phases. */
+    private static final long LOG_DRAIN_INTERVAL_MILLIS = 100;
+    /** Log lines appended to the UI at once; more are left for the next drain. */
+    private static final int MAX_LOG_BATCH = 256;
+
     interface Callback {
         void done();
     }
 
-    private final Activity activity;
+    /** Receives every log line, e.g. to forward it to another process. */
+    interface LogListener {
+        void onLog(String text, boolean error);
+    }
+
+    /** Which tests run in a fresh process (see {@link IsolatedBenchmarkService}). */
+    public enum Isolation {
+        NONE("Same process for all"),
+        BACKEND("New process per backend"),
+        RUN("New process per run");
+
+        private final String label;
+
+        Isolation(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * Order of runs across backends. Interleaving spreads slow drift (e.g. thermal build-up or a
+     * fuller storage) over all backends instead of penalizing the last one.
+     */
+    public enum Schedule {
+        /** All runs of a backend, then the next backend. */
+        SEQUENTIAL("Sequential"),
+        /** One run per backend per round, reversing the order every round: ABCD DCBA ABCD... */
+        ALTERNATING("Interleaved ABBA"),
+        /** One run per backend per round, in a random (seeded) order every round. */
+        RANDOM("Interleaved random");
+
+        private final String label;
+
+        Schedule(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /** A test in progress; its benchmark stays open across runs, which may interleave with other tests. */
+    private static class TestRun {
+        final PerfTest test;
+        final Benchmark benchmark;
+        final String traceLabel;
+        final long startTime = SystemClock.elapsedRealtime();
+        int lastRun;
+        String stopReason;
+        boolean stopped;
+
+        TestRun(PerfTest test, Benchmark benchmark, String traceLabel) {
+            this.test = test;
+            this.benchmark = benchmark;
+            this.traceLabel = traceLabel;
+        }
+    }
+
+    private final Context context;
     private final Callback callback;
+    @Nullable
     private final TextView textViewResults;
     private final int runs;
     private final int numberEntities;
     private ScrollView scrollViewResults;
+    private final LogBuffer logBuffer = new LogBuffer(LOG_BUFFER_CAPACITY);
+    private final AtomicBoolean logDrainScheduled = new AtomicBoolean();
+    private final Handler uiHandler = new Handler(Looper.getMainLooper());
+    private final Runnable logDrain = this::drainLog;
+    /** Benchmark of the running test, to detect logging within timed phases. */
+    private volatile Benchmark currentBenchmark;
+    private volatile String currentTestName;
+    /** Phases of the running test already reported for logging within them. */
+    private final Set<String> phasesWithLogs = new HashSet<>();
+    private final List<File> resultFiles = new ArrayList<>();
+    private boolean adaptive;
+    private double targetPrecision;
+    private long maxTimeMillis;
+    private boolean allocationCounting;
+    private String[] profiledPhases;
+    private Isolation isolation = Isolation.NONE;
+    private int firstRun = 1;
+    private boolean writeSummary = true;
+    private LogListener logListener;
+    private Schedule schedule = Schedule.SEQUENTIAL;
+    private long scheduleSeed;
+    /** Columns describing the next run, e.g. its position in the schedule; see {@link Benchmark#setRunInfo}. */
+    private final Map<String, String> runInfo = new LinkedHashMap<>();
+    /** Checksums of the first backend by run and phase, e.g. "2 access", to compare the others against. */
+    private final Map<String, Long> referenceChecksums = new HashMap<>();
+    private final Map<String, String> referenceBackends = new HashMap<>();
 
     boolean running;
-    boolean destroyed;
+    volatile boolean destroyed;
 
-    public PerfTestRunner(Activity activity, Callback callback, TextView textViewResults, int runs, int numberEntities) {
-        this.activity = activity;
+    /**
+     * @param textViewResults receives the log; if null (e.g. headless, see {@link BenchmarkInstrumentation})
+     *                        the log only goes to logcat
+     */
+    public PerfTestRunner(Context context, Callback callback, @Nullable TextView textViewResults, int runs,
+                          int numberEntities) {
+        this.context = context;
         this.callback = callback;
         this.textViewResults = textViewResults;
-        if (textViewResults.getParent() instanceof ScrollView) {
+        if (textViewResults != null && textViewResults.getParent() instanceof ScrollView) {
             scrollViewResults = (ScrollView) textViewResults.getParent();
         }
         this.runs = runs;
         this.numberEntities = numberEntities;
     }
 
+    /**
+     * Instead of always doing all runs, stop a test once the 95% confidence interval of each phase is
+     * within the given precision relative to its mean (e.g. 0.02 for ±2%). The number of runs and the
+     * given time budget become upper limits.
+     */
+    public void setAdaptive(double targetPrecision, long maxTimeMillis) {
+        this.adaptive = true;
+        this.targetPrecision = targetPrecision;
+        this.maxTimeMillis = maxTimeMillis;
+    }
+
+    /**
+     * Also count allocations of the benchmark thread per phase (see {@link AllocationProbe}); this
+     * makes allocations slower.
+     */
+    public void setAllocationCounting(boolean allocationCounting) {
+        this.allocationCounting = allocationCounting;
+    }
+
+    /**
+     * After the regular runs, do an extra run of each test profiling the given phases (see
+     * {@link PhaseProfiler}); null or empty to disable.
+     */
+    public void setProfiledPhases(String[] profiledPhases) {
+        this.profiledPhases = profiledPhases != null && profiledPhases.length > 0 ? profiledPhases : null;
+    }
+
+    /**
+     * Runs each backend or even each run in a fresh process, so backends do not affect each other
+     * through the shared heap, JIT state, native allocations or loaded libraries. The logs and
+     * results of the processes are streamed back to this runner. Adaptive runs require
+     * {@link Isolation#BACKEND} or {@link Isolation#NONE}.
+     */
+    public void setIsolation(Isolation isolation) {
+        this.isolation = isolation;
+    }
+
+    /**
+     * Number of the first run, e.g. if previous runs were done by another process.
+     */
+    void setFirstRun(int firstRun) {
+        this.firstRun = firstRun;
+    }
+
+    /**
+     * Whether to write the summary after the last run; not useful if other processes do further runs.
+     */
+    void setWriteSummary(boolean writeSummary) {
+        this.writeSummary = writeSummary;
+    }
+
+    /**
+     * Order of runs across backends; the seed is used by {@link Schedule#RANDOM}. Each result row gets
+     * the schedule, the round order of backends and the position of the run within its round, so
+     * position-dependent bias can be measured. Interleaving is not possible with
+     * {@link Isolation#BACKEND}.
+     */
+    public void setSchedule(Schedule schedule, long seed) {
+        this.schedule = schedule;
+        this.scheduleSeed = seed;
+    }
+
+    /**
+     * Sets a column describing the next run(s), e.g. its position in the schedule.
+     */
+    void setRunInfo(String key, String value) {
+        runInfo.put(key, value);
+    }
+
+    void setLogListener(LogListener logListener) {
+        this.logListener = logListener;
+    }
+
     public void run(final TestType type, final List<PerfTest> tests) {
         if (running) {
             throw new IllegalStateException("Already running");
         }
         running = true;
+        referenceChecksums.clear();
+        referenceBackends.clear();
         Thread thread = new Thread(() -> {
             try {
-                for (PerfTest test : tests) {
-                    if (!destroyed) {
-                        try {
-                            PerfTestRunner.this.run(type, test);
-                        } catch (Exception e) {
-                            logError("Aborted because of " + e.getMessage());
-                            Log.e("PERF", "Error while running tests", e);
-                        }
-                    }
+                boolean interleaved = schedule != Schedule.SEQUENTIAL && tests.size() > 1;
+                if (interleaved && isolation == Isolation.BACKEND) {
+                    logError("Runs cannot be interleaved with a process per backend, running backends sequentially");
+                    interleaved = false;
+                }
+                if (interleaved) {
+                    runInterleaved(type, tests);
+                } else {
+                    runSequential(type, tests);
                 }
             } finally {
                 running = false;
@@ -91,10 +288,27 @@ public class PerfTestRunner {
         thread.start();
     }
 
+    /**
+     * Results, summary and profile files written by the tests run so far.
+     */
+    public List<File> getResultFiles() {
+        synchronized (resultFiles) {
+            return new ArrayList<>(resultFiles);
+        }
+    }
+
+    /**
+     * Cancels the tests: the current run stops at the next checkpoint (see
+     * {@link PerfTest#checkCancelled()}) and is recorded as cancelled.
+     */
     public void destroy() {
         destroyed = true;
     }
 
+    public boolean isCancelled() {
+        return destroyed;
+    }
+
     public void log(final String text) {
         log(text, false);
     }
@@ -103,95 +317,495 @@ public class PerfTestRunner {
         log(text, true);
     }
 
+    /**
+     * Does not block: the line is buffered and appended to the UI by a later drain on the UI thread.
+     * Logging within a timed phase adds to its time, thus it is reported once per phase.
+     */
     private void log(final String text, final boolean error) {
-        Log.d("PERF", text);
-        final CountDownLatch joinLatch = new CountDownLatch(1);
-        activity.runOnUiThread(() -> {
-            if (error) {
-                Spannable errorSpan = new SpannableString(text.concat("\n"));
-                errorSpan.setSpan(new ForegroundColorSpan(Color.RED), 0, errorSpan.length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-                textViewResults.append(errorSpan);
-            } else {
-                textViewResults.append(text.concat("\n"));
-            }
+        if (error) {
+            Log.e("PERF", text);
+        } else {
+            Log.d("PERF", text);
+        }
+        if (logListener != null) {
+            logListener.onLog(text, error);
+        }
+        Benchmark benchmark = currentBenchmark;
+        if (benchmark != null && benchmark.isTiming()) {
+            reportLogInPhase(benchmark.getCurrentPhaseName(), text);
+        }
+        enqueueLog(text, error);
+    }
+
+    private void reportLogInPhase(String phaseName, String text) {
+        boolean firstInPhase;
+        synchronized (phasesWithLogs) {
+            firstInPhase = phasesWithLogs.add(currentTestName + " " + phaseName);
+        }
+        if (firstInPhase) {
+            String warning = "Logged within timed phase " + phaseName + ", which distorts its time: " + text;
+            Log.w("PERF", warning);
+            enqueueLog(warning, true);
+        }
+    }
+
+    private void enqueueLog(String text, boolean error) {
+        if (textViewResults == null) {
+            return;
+        }
+        logBuffer.offer(text, error);
+        if (logDrainScheduled.compareAndSet(false, true)) {
+            uiHandler.postDelayed(logDrain, LOG_DRAIN_INTERVAL_MILLIS);
+        }
+    }
+
+    /** Appends buffered log lines to the UI in one batch; runs on the UI thread. */
+    private void drainLog() {
+        // Reset before polling: lines added from now on schedule another drain
+        logDrainScheduled.set(false);
+        SpannableStringBuilder batch = new SpannableStringBuilder();
+        long dropped = logBuffer.takeDropped();
+        if (dropped > 0) {
+            appendLine(batch, dropped + " log lines dropped (see logcat)", true);
+        }
+        LogBuffer.Entry entry;
+        int count = 0;
+        while (count < MAX_LOG_BATCH && (entry = logBuffer.poll()) != null) {
+            appendLine(batch, entry.text, entry.error);
+            count++;
+        }
+        if (batch.length() > 0) {
+            textViewResults.append(batch);
             // post so just appended text is visible
             if (scrollViewResults != null) {
                 textViewResults.post(() -> scrollViewResults.fullScroll(ScrollView.FOCUS_DOWN));
             }
-            textViewResults.postDelayed(joinLatch::countDown, 20);
-        });
+        }
+        if (count == MAX_LOG_BATCH && logDrainScheduled.compareAndSet(false, true)) {
+            uiHandler.postDelayed(logDrain, LOG_DRAIN_INTERVAL_MILLIS);
+        }
+    }
+
+    private static void appendLine(SpannableStringBuilder batch, String text, boolean error) {
+        int start = batch.length();
+        batch.append(text).append("\n");
+        if (error) {
+            batch.setSpan(new ForegroundColorSpan(Color.RED), start, batch.length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+    }
+
+    private void runSequential(TestType type, List<PerfTest> tests) {
+        String order = formatOrder(tests, null);
+        // A benchmark process keeps the schedule given by its coordinator
+        boolean describeRuns = !runInfo.containsKey("schedule");
+        for (int i = 0; i < tests.size() && !destroyed; i++) {
+            PerfTest test = tests.get(i);
+            if (describeRuns) {
+                setRunInfo("schedule", "sequential");
+                setRunInfo("order", order);
+                setRunInfo("position", Integer.toString(i + 1));
+            }
+            try {
+                if (isolation == Isolation.NONE) {
+                    run(type, test);
+                } else {
+                    runIsolated(type, test);
+                }
+            } catch (Exception e) {
+                logError("Aborted because of " + e.getMessage());
+                Log.e("PERF", "Error while running tests", e);
+            }
+        }
+    }
+
+    /**
+     * Runs one run of each test per round, in the order given by the schedule.
+     */
+    private void runInterleaved(TestType type, List<PerfTest> tests) {
+        Random random = new Random(scheduleSeed);
+        String scheduleName = schedule == Schedule.RANDOM ? "random-" + scheduleSeed : "alternating";
+        List<TestRun> testRuns = new ArrayList<>();
         try {
-            boolean ok = joinLatch.await(10, TimeUnit.SECONDS);
-            if (!ok) {
-                throw new RuntimeException("Not joined");
+            if (isolation == Isolation.NONE) {
+                for (PerfTest test : tests) {
+                    testRuns.add(startTest(type, test));
+                }
             }
-            // Give UI time to settle (> 1 frame)
-            Thread.sleep(20);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            for (int round = 1; round <= runs && !destroyed; round++) {
+                int[] order = roundOrder(schedule, tests.size(), round, random);
+                String orderText = formatOrder(tests, order);
+                log("\nRound " + round + "/" + runs + ": " + orderText);
+                boolean anyRunning = false;
+                for (int position = 0; position < order.length && !destroyed; position++) {
+                    setRunInfo("schedule", scheduleName);
+                    setRunInfo("order", orderText);
+                    setRunInfo("position", Integer.toString(position + 1));
+                    PerfTest test = tests.get(order[position]);
+                    if (isolation == Isolation.NONE) {
+                        TestRun testRun = testRuns.get(order[position]);
+                        if (testRun.stopped) {
+                            continue;
+                        }
+                        try {
+                            runOnce(type, testRun, firstRun - 1 + round, firstRun - 1 + runs);
+                        } catch (RuntimeException e) {
+                            logError(test.name() + " aborted because of " + e.getMessage());
+                            Log.e("PERF", "Error while running tests", e);
+                            testRun.stopped = true;
+                            testRun.stopReason = "error";
+                        }
+                        anyRunning |= !testRun.stopped;
+                    } else {
+                        anyRunning = true;
+                        try {
+                            runInProcess(type, test, firstRun - 1 + round, 1, round == runs ? profiledPhases : null);
+                        } catch (InterruptedException e) {
+                            logError("Interrupted");
+                            return;
+                        }
+                    }
+                }
+                if (!anyRunning) {
+                    break;
+                }
+            }
+        } finally {
+            for (TestRun testRun : testRuns) {
+                finishTest(type, testRun, testRun.stopReason == null || !testRun.stopReason.equals("error"));
+            }
+        }
+        if (isolation == Isolation.RUN) {
+            log("\nNo summary with a new process per run; see the results files");
+        }
+    }
+
+    /**
+     * Order of the tests (as indexes) in the given round (starting at 1).
+     */
+    static int[] roundOrder(Schedule schedule, int testCount, int round, Random random) {
+        int[] order = new int[testCount];
+        for (int i = 0; i < testCount; i++) {
+            order[i] = schedule == Schedule.ALTERNATING && round % 2 == 0 ? testCount - 1 - i : i;
         }
+        if (schedule == Schedule.RANDOM) {
+            for (int i = testCount - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+        }
+        return order;
+    }
+
+    /** E.g. "ObjectBox>Realm>Room"; order may be null for the list order. */
+    private static String formatOrder(List<PerfTest> tests, int[] order) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < tests.size(); i++) {
+            if (i > 0) {
+                text.append('>');
+            }
+            text.append(tests.get(order != null ? order[i] : i).name());
+        }
+        return text.toString();
     }
 
     private void run(TestType type, PerfTest test) {
+        TestRun testRun = startTest(type, test);
+        boolean completed = false;
+        try {
+            int totalRuns = firstRun - 1 + runs;
+            for (int i = firstRun; i <= totalRuns && !testRun.stopped; i++) {
+                runOnce(type, testRun, i, totalRuns);
+            }
+            completed = true;
+        } finally {
+            finishTest(type, testRun, completed);
+        }
+    }
+
+    private TestRun startTest(TestType type, PerfTest test) {
         printDeviceInfo();
 
         test.setNumberEntities(numberEntities);
         Benchmark benchmark = createBenchmark(type, test, numberEntities);
+        benchmark.firstRun(firstRun);
         test.setBenchmark(benchmark);
-        for (int i = 1; i <= runs; i++) {
-            log("\n" + test.name() + " " + type + " (" + i + "/" + runs + ")\n" +
-                    "------------------------------");
-            test.setUp(activity, this);
+        synchronized (phasesWithLogs) {
+            phasesWithLogs.clear();
+        }
+        return new TestRun(test, benchmark, getTraceLabel(type, test));
+    }
 
-            RuntimeException exDuringRun = null;
-            try {
-                test.run(type);
-            } catch (RuntimeException ex) {
-                exDuringRun = ex;
+    /**
+     * Does a single run and commits it; afterwards, the test run is stopped if it was cancelled or
+     * (if adaptive) converged or out of time.
+     */
+    private void runOnce(TestType type, TestRun testRun, int run, int totalRuns) {
+        PerfTest test = testRun.test;
+        Benchmark benchmark = testRun.benchmark;
+        for (Map.Entry<String, String> entry : runInfo.entrySet()) {
+            benchmark.setRunInfo(entry.getKey(), entry.getValue());
+        }
+        currentTestName = test.name();
+        currentBenchmark = benchmark;
+        testRun.lastRun = run;
+        log("\n" + test.name() + " " + type + " (" + run + "/" + totalRuns + ")\n" +
+                "------------------------------");
+        boolean cancelled = false;
+        try {
+            runTest(type, test, testRun.traceLabel, run);
+        } catch (BenchmarkCancelledException e) {
+            cancelled = true;
+        } finally {
+            currentBenchmark = null;
+        }
+        if (cancelled) {
+            log(benchmark.commitCancelled());
+        } else {
+            log(benchmark.commit());
+            verifyChecksums(type, test, run, benchmark.getLastChecksums());
+        }
+        testRun.stopReason = adaptive ? "max-runs" : "runs";
+        if (cancelled || destroyed) {
+            testRun.stopReason = "cancelled";
+            testRun.stopped = true;
+        } else if (adaptive) {
+            double precision = benchmark.getPrecision();
+            if (!Double.isNaN(precision)) {
+                log(String.format(Locale.US, "Precision after %d runs: ±%.2f%%", run, precision * 100));
             }
+            if (run >= MIN_ADAPTIVE_RUNS && precision <= targetPrecision) {
+                testRun.stopReason = "converged";
+                testRun.stopped = true;
+            } else if (run < totalRuns && SystemClock.elapsedRealtime() - testRun.startTime >= maxTimeMillis) {
+                testRun.stopReason = "max-time";
+                testRun.stopped = true;
+            }
+        }
+    }
 
-            RuntimeException exDuringTearDown = null;
-            try {
-                test.tearDown();
-            } catch (RuntimeException ex) {
-                exDuringTearDown = ex;
+    /**
+     * Closes the test's benchmark; if completed, does the profiling run and writes the summary first.
+     */
+    private void finishTest(TestType type, TestRun testRun, boolean completed) {
+        PerfTest test = testRun.test;
+        Benchmark benchmark = testRun.benchmark;
+        try {
+            if (completed && profiledPhases != null && !destroyed) {
+                log("\n" + test.name() + " " + type + " (profiling)\n" +
+                        "------------------------------");
+                currentTestName = test.name();
+                currentBenchmark = benchmark;
+                benchmark.beginProfilingRun();
+                try {
+                    runTest(type, test, testRun.traceLabel, testRun.lastRun + 1);
+                } catch (BenchmarkCancelledException e) {
+                    log("Profiling run cancelled");
+                } finally {
+                    currentBenchmark = null;
+                }
+                log(benchmark.commit());
             }
-            if (exDuringRun != null) {
-                throw exDuringRun;
-            } else if (exDuringTearDown != null) {
-                throw exDuringTearDown;
+            if (completed && writeSummary && testRun.stopReason != null) {
+                log("\n" + benchmark.writeSummary(testRun.stopReason));
             }
-            benchmark.commit();
-            if (destroyed) {
-                break;
+        } finally {
+            benchmark.close();
+            for (File file : benchmark.getFiles()) {
+                if (file.exists()) {
+                    synchronized (resultFiles) {
+                        resultFiles.add(file);
+                    }
+                }
             }
         }
         test.allTestsComplete();
         log("\nTests done at " + new Date());
     }
 
+    /**
+     * Runs the test in {@link IsolatedBenchmarkService}, once for all runs or once per run.
+     */
+    private void runIsolated(TestType type, PerfTest test) throws InterruptedException {
+        if (isolation == Isolation.RUN) {
+            if (adaptive) {
+                logError("Adaptive runs are not supported with a new process per run, doing " + runs + " runs");
+            }
+            for (int i = 0; i < runs && !destroyed; i++) {
+                // Profile in the last process only, after its regular run
+                runInProcess(type, test, firstRun + i, 1, i == runs - 1 ? profiledPhases : null);
+            }
+            log("\nNo summary with a new process per run; see the results file");
+        } else {
+            runInProcess(type, test, firstRun, runs, profiledPhases);
+        }
+    }
+
+    /**
+     * Does the given runs of the test in a fresh process; with a single run, runs are spread over
+     * processes and no summary is written.
+     */
+    private void runInProcess(TestType type, PerfTest test, int firstRun, int runs, String[] profiledPhases)
+            throws InterruptedException {
+        boolean processPerRun = isolation == Isolation.RUN;
+        Bundle request = new Bundle();
+        request.putString(IsolatedBenchmarkService.KEY_TEST_CLASS, test.getClass().getName());
+        request.putString(IsolatedBenchmarkService.KEY_TYPE, type.nameShort);
+        request.putInt(IsolatedBenchmarkService.KEY_COUNT, numberEntities);
+        request.putInt(IsolatedBenchmarkService.KEY_RUNS, runs);
+        request.putInt(IsolatedBenchmarkService.KEY_FIRST_RUN, firstRun);
+        // Runs spread over processes cannot be summarized by any of them
+        request.putBoolean(IsolatedBenchmarkService.KEY_WRITE_SUMMARY, !processPerRun);
+        request.putBoolean(IsolatedBenchmarkService.KEY_ADAPTIVE, adaptive && !processPerRun);
+        request.putBoolean(IsolatedBenchmarkService.KEY_ALLOCATIONS, allocationCounting);
+        request.putStringArray(IsolatedBenchmarkService.KEY_PROFILE_PHASES, profiledPhases);
+        request.putStringArray(IsolatedBenchmarkService.KEY_RUN_INFO_KEYS, runInfo.keySet().toArray(new String[0]));
+        request.putStringArray(IsolatedBenchmarkService.KEY_RUN_INFO_VALUES, runInfo.values().toArray(new String[0]));
+
+        IsolatedBenchmarkService.Result result = IsolatedBenchmarkService.run(context, request, this::log,
+                () -> destroyed);
+        synchronized (resultFiles) {
+            for (File file : result.files) {
+                if (!resultFiles.contains(file)) {
+                    resultFiles.add(file);
+                }
+            }
+        }
+        for (Map.Entry<String, Long> entry : result.checksums.entrySet()) {
+            verifyChecksum(type, test.name(), entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void runTest(TestType type, PerfTest test, String traceLabel, int run) {
+        String runTraceName = traceLabel + " run " + run;
+        Tracing.beginAsyncSection(runTraceName, run);
+        test.setRun(run);
+        test.setUp(context, this);
+
+        RuntimeException exDuringRun = null;
+        Tracing.beginSection(traceLabel);
+        try {
+            test.run(type);
+        } catch (RuntimeException ex) {
+            exDuringRun = ex;
+        } finally {
+            Tracing.endSection();
+        }
+
+        RuntimeException exDuringTearDown = null;
+        try {
+            test.tearDown();
+        } catch (RuntimeException ex) {
+            exDuringTearDown = ex;
+        }
+        Tracing.endAsyncSection(runTraceName, run);
+        if (exDuringRun != null) {
+            throw exDuringRun;
+        } else if (exDuringTearDown != null) {
+            throw exDuringTearDown;
+        }
+    }
+
+    /**
+     * Compares the checksums of the values accessed in each phase with the first backend that ran
+     * the same run and phase; a mismatch means the backends did not read the same data. Only phases
+     * reading identical data are compared (see {@link #hasComparableChecksum(TestType, String)}).
+     */
+    private void verifyChecksums(TestType type, PerfTest test, int run, Map<String, Long> checksums) {
+        for (Map.Entry<String, Long> entry : checksums.entrySet()) {
+            verifyChecksum(type, test.name(), run + " " + entry.getKey(), entry.getValue());
+        }
+    }
+
+    /** @param key run and phase, e.g. "2 access" */
+    private void verifyChecksum(TestType type, String backend, String key, long checksum) {
+        String phase = key.substring(key.indexOf(' ') + 1);
+        if (!hasComparableChecksum(type, phase)) {
+            return;
+        }
+        Long reference = referenceChecksums.get(key);
+        if (reference == null) {
+            referenceChecksums.put(key, checksum);
+            referenceBackends.put(key, backend);
+        } else if (reference != checksum) {
+            logError("Checksum of " + phase + " (" + Long.toHexString(checksum)
+                    + ") differs from " + referenceBackends.get(key) + " (" + Long.toHexString(reference) + ")");
+        } else if (!backend.equals(referenceBackends.get(key))) {
+            log("Checksum of " + phase + " matches " + referenceBackends.get(key));
+        }
+    }
+
+    /**
+     * Whether all backends read identical data in the given phase, i.e. all entities the test
+     * generated or the same ones by ID. Query tests pick their parameters per backend, so their
+     * checksums are written, but not compared.
+     */
+    static boolean hasComparableChecksum(TestType type, String phase) {
+        switch (type.name) {
+            case TestType.CRUD:
+            case TestType.CRUD_INDEXED:
+                return phase.equals("access");
+            case TestType.POINT_OPERATIONS:
+                return phase.equals("get") || phase.equals("query");
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Checksums by run and phase (e.g. "2 access") of the first backend that did them.
+     */
+    Map<String, Long> getChecksums() {
+        return new HashMap<>(referenceChecksums);
+    }
+
     private void printDeviceInfo() {
         log("Model: " + Build.MANUFACTURER + " " + Build.MODEL
                 + ", Android " + Build.VERSION.RELEASE);
 
         ActivityManager activityManager =
-                (ActivityManager) activity.getSystemService(Activity.ACTIVITY_SERVICE);
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
         int memoryClassMb = activityManager.getMemoryClass();
         int largeMemoryClassMb = activityManager.getLargeMemoryClass();
         log("MemoryClass: " + memoryClassMb + " MB");
         log("LargeMemoryClass: " + largeMemoryClassMb + " MB");
+        log("CPUs: " + ThermalProbe.describeCpus());
+    }
+
+    /** Prefix of trace sections, e.g. "ObjectBox crud 10000". */
+    private String getTraceLabel(TestType type, PerfTest test) {
+        return test.name() + " " + type.nameShort + " " + numberEntities;
     }
 
     protected Benchmark createBenchmark(TestType type, PerfTest test, int numberEntities) {
-        String name = test.name() + "-" + type.nameShort + "-" + numberEntities + ".tsv";
+        String baseName = test.name() + "-" + type.nameShort + "-" + numberEntities;
+        String name = baseName + ".tsv";
         File dir = Environment.getExternalStorageDirectory();
         File file = new File(dir, name);
         if (dir == null || !dir.canWrite()) {
-            File appFile = new File(activity.getFilesDir(), name);
+            File appFile = new File(context.getFilesDir(), name);
             Log.i("PERF", "Using file " + appFile.getAbsolutePath() + " because " + file.getAbsolutePath() +
                     " is not writable - please grant the storage permission to the app");
             file = appFile;
         }
-        return new Benchmark(file);
+        Benchmark benchmark = new Benchmark(file)
+                .traceLabel(getTraceLabel(type, test))
+                .operations(numberEntities)
+                .addProbe(new GcProbe())
+                .addProbe(new NativeMemoryProbe())
+                .addProbe(new ThermalProbe())
+                .addProbe(new ProcessCpuProbe());
+        benchmark.addProbe(new IoProbe(benchmark))
+                .addProbe(new SchedulerProbe())
+                .addProbe(new DatabaseSizeProbe(test));
+        if (allocationCounting) {
+            benchmark.addProbe(new AllocationProbe());
+        }
+        if (profiledPhases != null) {
+            benchmark.profiler(new PhaseProfiler(file.getParentFile(), baseName, profiledPhases,
+                    PhaseProfiler.DEFAULT_SAMPLING_INTERVAL_US));
+        }
+        return benchmark;
     }
 }
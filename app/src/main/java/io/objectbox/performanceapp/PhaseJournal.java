@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.objectbox.performanceapp;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps the phases of the run in progress in a small binary file next to the results. The columns
+ * describing the run are written once when it begins; after that, values are only appended from the
+ * primitive storage of {@link Benchmark} through a reused buffer, so journaling does not allocate
+ * between phases. Written bytes survive the process dying (no fsync, so not the device losing power);
+ * the next {@link Benchmark} for the same file recovers them as a row in the format of the results
+ * file, ignoring a record cut off mid-write. The journal is deleted once the run is committed.
+ */
+class PhaseJournal {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final File file;
+    private DataOutputStream out;
+
+    PhaseJournal(File file) {
+        this.file = file;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Starts a new journal with the columns describing the run, e.g. the run number; failures are only
+     * logged, the run goes on without a journal.
+     */
+    void begin(List<String> headers, List<String> values) {
+        clear();
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+            out.writeShort(headers.size());
+            for (int i = 0; i < headers.size(); i++) {
+                out.writeUTF(headers.get(i));
+                out.writeUTF(values.get(i));
+            }
+            out.flush();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Appends a value by its slot in the run; a later value for the same slot replaces an earlier
+     * one. The name is the UTF-8 encoded column name. Buffered until {@link #flush()}.
+     */
+    void append(int slot, byte format, byte[] name, long value) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.writeInt(slot);
+            out.writeByte(format);
+            out.writeShort(name.length);
+            out.write(name);
+            out.writeLong(value);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void flush() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(IOException e) {
+        Log.w(Benchmark.TAG, "Could not write journal " + file, e);
+        close();
+    }
+
+    private void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Ignore, the journal is abandoned or deleted anyway
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * Returns headers and values of the journal formatted like a results row (values in slot order),
+     * or null if there is none (or it is invalid).
+     */
+    String[][] read() {
+        List<String> headers = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        Map<Integer, String[]> slots = new TreeMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int count = in.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                headers.add(in.readUTF());
+                values.add(in.readUTF());
+            }
+            try {
+                while (true) {
+                    int slot = in.readInt();
+                    byte format = in.readByte();
+                    byte[] name = new byte[in.readUnsignedShort()];
+                    in.readFully(name);
+                    long value = in.readLong();
+                    slots.put(slot, new String[]{new String(name, "UTF-8"), Benchmark.formatValue(format, value)});
+                }
+            } catch (EOFException e) {
+                // End of the journal, or a record cut off by the process dying: keep complete ones
+            }
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(Benchmark.TAG, "Ignoring invalid journal " + file, e);
+            return null;
+        }
+        if (slots.isEmpty()) {
+            return null;
+        }
+        for (String[] column : slots.values()) {
+            headers.add(column[0]);
+            values.add(column[1]);
+        }
+        return new String[][]{headers.toArray(new String[0]), values.toArray(new String[0])};
+    }
+
+    void clear() {
+        close();
+        if (file.exists() && !file.delete()) {
+            Log.w(Benchmark.TAG, "Could not delete journal " + file);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.objectbox.performanceapp;
+
+/**
+ * Samples some resource usage at the start and the end of each benchmark phase; the values it
+ * reports become additional columns of the phase, e.g. "insert-gc-count". Sampling happens outside
+ * of the timed section. begin() however runs after the heap has settled, right before the clock
+ * starts, so it must not allocate (see {@link ProcFiles.Reader}); end() may be costly.
+ */
+public interface PhaseProbe {
+
+    /** Column name suffixes; the phase name is used as prefix. */
+    String[] columns();
+
+    /** Called right before the clock of a phase starts; must not allocate. */
+    void begin();
+
+    /** Called after the clock of a phase stopped; puts a value for each column at values[offset + i]. */
+    void end(long[] values, int offset);
+}
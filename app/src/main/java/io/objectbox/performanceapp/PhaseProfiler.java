@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.objectbox.performanceapp;
+
+import android.os.Build;
+import android.os.Debug;
+import android.util.Log;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Captures a sampling profile (Android 5.0+) of selected phases to find out why they are slow;
+ * each profiled phase gets its own .trace file, e.g. "greenDAO-crud-100000-load-run4.trace", which
+ * can be opened with Android Studio's profiler. As profiling slows down the app, phases are only
+ * profiled in extra runs excluded from the results (see {@link Benchmark#beginProfilingRun()}).
+ */
+public class PhaseProfiler {
+
+    public static final int DEFAULT_SAMPLING_INTERVAL_US = 1000;
+    private static final int BUFFER_SIZE = 64 * 1024 * 1024;
+
+    private final File dir;
+    private final String filePrefix;
+    private final Set<String> phaseNames;
+    private final int samplingIntervalUs;
+    private File currentFile;
+
+    /**
+     * @param phaseNames top level or nested phases (e.g. "insert/put") to profile
+     */
+    public PhaseProfiler(File dir, String filePrefix, String[] phaseNames, int samplingIntervalUs) {
+        this.dir = dir;
+        this.filePrefix = filePrefix;
+        this.phaseNames = new HashSet<>(Arrays.asList(phaseNames));
+        this.samplingIntervalUs = samplingIntervalUs;
+    }
+
+    public boolean isProfiled(String phaseName) {
+        return phaseNames.contains(phaseName);
+    }
+
+    /** Returns false if profiling is not supported or already running. */
+    boolean start(String phaseName, int run) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            Log.w(Benchmark.TAG, "Sampling profiler requires Android 5.0, not profiling " + phaseName);
+            return false;
+        }
+        if (currentFile != null) {
+            Log.w(Benchmark.TAG, "Already profiling " + currentFile.getName() + ", not profiling " + phaseName);
+            return false;
+        }
+        String name = filePrefix + "-" + phaseName.replaceAll("[^A-Za-z0-9.-]", "_") + "-run" + run + ".trace";
+        currentFile = new File(dir, name);
+        Debug.startMethodTracingSampling(currentFile.getAbsolutePath(), BUFFER_SIZE, samplingIntervalUs);
+        return true;
+    }
+
+    /** @return the written trace file */
+    File stop() {
+        Debug.stopMethodTracing();
+        File file = currentFile;
+        currentFile = null;
+        return file;
+    }
+}
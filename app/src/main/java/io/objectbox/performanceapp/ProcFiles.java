@@ -0,0 +1,249 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.objectbox.performanceapp;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Reads Linux kernel stats from /proc and /sys. These files have no length, so they are read until
+ * EOF. Failures (e.g. files hidden by SELinux on newer Android versions) are not fatal: readers get
+ * null or -1 and report values as unavailable. Samples taken right before a phase starts use a
+ * {@link Reader} instead, which does not allocate.
+ */
+public class ProcFiles {
+
+    /**
+     * Returns the contents of the given file or null if it could not be read.
+     */
+    public static String read(String path) {
+        InputStream in = null;
+        try {
+            in = new FileInputStream(path);
+            byte[] buffer = new byte[4096];
+            int length = 0;
+            int read;
+            while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+                if (length == buffer.length) {
+                    byte[] newBuffer = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, newBuffer, 0, length);
+                    buffer = newBuffer;
+                }
+            }
+            return new String(buffer, 0, length, "US-ASCII");
+        } catch (IOException e) {
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Reads a file containing a single number, e.g. /sys/.../scaling_cur_freq; -1 if unavailable.
+     */
+    public static long readLong(String path) {
+        String contents = read(path);
+        if (contents == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contents.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Re-reads one file without allocating, so it can sample right before the clock of a phase starts
+     * (after the heap has settled). The file is kept open and read from its start again, which makes
+     * the kernel generate current contents; values are parsed in place from a reused buffer. Only the
+     * constructor opens the file (and a read after a failure opens it again), which allocates.
+     */
+    public static class Reader implements Closeable {
+        private final String path;
+        private RandomAccessFile file;
+        private byte[] buffer = new byte[1024];
+        private int length;
+
+        public Reader(String path) {
+            this.path = path;
+            open();
+        }
+
+        /** Reads the current contents; false if the file is unavailable (then parsers return -1). */
+        public boolean read() {
+            length = 0;
+            if (file == null && !open()) {
+                return false;
+            }
+            try {
+                file.seek(0);
+                int read;
+                while ((read = file.read(buffer, length, buffer.length - length)) > 0) {
+                    length += read;
+                    if (length == buffer.length) {
+                        byte[] newBuffer = new byte[buffer.length * 2];
+                        System.arraycopy(buffer, 0, newBuffer, 0, length);
+                        buffer = newBuffer;
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                // E.g. an offline core; opened again on the next read
+                length = 0;
+                close();
+                return false;
+            }
+        }
+
+        /** The number the file starts with, e.g. of /sys/.../scaling_cur_freq; -1 if unavailable. */
+        public long getLong() {
+            return parseLong(0);
+        }
+
+        /**
+         * Parses the number of a "key: value [unit]" line as found in /proc/self/status and
+         * /proc/self/io; -1 if the key is not present.
+         */
+        public long getValue(String key) {
+            int keyLength = key.length();
+            int lineStart = 0;
+            while (lineStart + keyLength < length) {
+                boolean match = buffer[lineStart + keyLength] == ':';
+                for (int i = 0; match && i < keyLength; i++) {
+                    match = buffer[lineStart + i] == key.charAt(i);
+                }
+                if (match) {
+                    return parseLong(lineStart + keyLength + 1);
+                }
+                while (lineStart < length && buffer[lineStart] != '\n') {
+                    lineStart++;
+                }
+                lineStart++;
+            }
+            return -1;
+        }
+
+        /** The given space separated field (0 for the first), e.g. of a schedstat file; -1 if unavailable. */
+        public long getField(int index) {
+            return parseLong(fieldStart(0, index));
+        }
+
+        /**
+         * Field of the last read /proc/[pid]/stat contents, numbered as in proc(5) starting at 1 (e.g.
+         * 14 for utime). The command name (field 2) may contain spaces and is therefore skipped up to
+         * the last closing parenthesis; it is not a number. -1 if unavailable.
+         */
+        public long getStatField(int number) {
+            if (number == 1) {
+                return parseLong(0);
+            }
+            int commandEnd = lastIndexOf(')');
+            if (number < 3 || commandEnd == -1) {
+                return -1;
+            }
+            return parseLong(fieldStart(commandEnd + 1, number - 3));
+        }
+
+        /** Command name (field 2) of the last read /proc/[pid]/stat contents; allocates, null if unavailable. */
+        public String getStatCommand() {
+            int commandEnd = lastIndexOf(')');
+            int commandStart = 0;
+            while (commandStart < length && buffer[commandStart] != '(') {
+                commandStart++;
+            }
+            if (commandEnd == -1 || commandStart >= commandEnd) {
+                return null;
+            }
+            try {
+                return new String(buffer, commandStart + 1, commandEnd - commandStart - 1, "US-ASCII");
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void close() {
+            ProcFiles.close(file);
+            file = null;
+        }
+
+        private boolean open() {
+            try {
+                file = new RandomAccessFile(path, "r");
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        private int lastIndexOf(char c) {
+            for (int i = length - 1; i >= 0; i--) {
+                if (buffer[i] == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /** Start of the field with the given index after position; length if there are fewer fields. */
+        private int fieldStart(int position, int index) {
+            for (int field = 0; ; field++) {
+                while (position < length && isBlank(buffer[position])) {
+                    position++;
+                }
+                if (field == index || position >= length) {
+                    return position;
+                }
+                while (position < length && !isBlank(buffer[position])) {
+                    position++;
+                }
+            }
+        }
+
+        private long parseLong(int position) {
+            while (position < length && (buffer[position] == ' ' || buffer[position] == '\t')) {
+                position++;
+            }
+            long value = 0;
+            boolean digitFound = false;
+            while (position < length && buffer[position] >= '0' && buffer[position] <= '9') {
+                value = value * 10 + (buffer[position++] - '0');
+                digitFound = true;
+            }
+            return digitFound ? value : -1;
+        }
+
+        private static boolean isBlank(byte b) {
+            return b == ' ' || b == '\t' || b == '\n';
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+}
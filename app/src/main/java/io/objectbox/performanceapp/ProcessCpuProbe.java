@@ -0,0 +1,240 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.objectbox.performanceapp;
+
+import android.os.Build;
+import android.os.Process;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import java.io.File;
+
+/**
+ * Measures the CPU time of the whole process during a phase, including work that databases do on
+ * other threads and in native code, which the thread time of the benchmark thread does not show.
+ * Reads user and system time from /proc/self/stat and per thread times from /proc/self/task/[tid]/stat;
+ * the threads using most CPU are logged. Times are in ms with a resolution of a clock tick
+ * (usually 10 ms); -1 if unavailable.
+ */
+public class ProcessCpuProbe implements PhaseProbe {
+
+    private static final String[] COLUMNS = {
+            "cpu-user-ms", "cpu-system-ms", "cpu-ms", "cpu-bench-thread-ms", "cpu-other-threads-ms",
+            "cpu-threads-active"
+    };
+    /** Number of threads logged per phase. */
+    private static final int TOP_THREADS = 3;
+
+    // proc(5) field numbers
+    private static final int FIELD_UTIME = 14;
+    private static final int FIELD_STIME = 15;
+
+    private final long clockTicksPerSecond;
+    private final ProcFiles.Reader processStat = new ProcFiles.Reader("/proc/self/stat");
+    private long userStart;
+    private long systemStart;
+    private int benchmarkTid;
+    /** Threads as listed after the last phase; begin() only re-reads their stat files. */
+    private Threads threads = Threads.list(null);
+
+    public ProcessCpuProbe() {
+        long ticks = 0;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            ticks = Os.sysconf(OsConstants._SC_CLK_TCK);
+        }
+        // USER_HZ is 100 on all Android devices
+        clockTicksPerSecond = ticks > 0 ? ticks : 100;
+    }
+
+    @Override
+    public String[] columns() {
+        return COLUMNS;
+    }
+
+    @Override
+    public void begin() {
+        benchmarkTid = Process.myTid();
+        threads.readStartTicks();
+        if (processStat.read()) {
+            userStart = processStat.getStatField(FIELD_UTIME);
+            systemStart = processStat.getStatField(FIELD_STIME);
+        } else {
+            userStart = -1;
+            systemStart = -1;
+        }
+    }
+
+    @Override
+    public void end(long[] values, int offset) {
+        processStat.read();
+        long user = processStat.getStatField(FIELD_UTIME);
+        long system = processStat.getStatField(FIELD_STIME);
+        // Threads started during the phase are picked up here and count fully
+        threads = Threads.list(threads);
+        long[] deltas = threads.readDeltas();
+        if (user == -1 || userStart == -1) {
+            for (int i = 0; i < COLUMNS.length; i++) {
+                values[offset + i] = -1;
+            }
+            return;
+        }
+        long userMillis = toMillis(user - userStart);
+        long systemMillis = toMillis(system - systemStart);
+        values[offset] = userMillis;
+        values[offset + 1] = systemMillis;
+        values[offset + 2] = userMillis + systemMillis;
+
+        long benchmarkThreadTicks = -1;
+        int activeThreads = 0;
+        int count = 0;
+        for (int i = 0; i < threads.count; i++) {
+            if (deltas[i] == -1) {
+                // Thread ended in the meantime
+                continue;
+            }
+            count++;
+            if (threads.tids[i] == benchmarkTid) {
+                benchmarkThreadTicks = deltas[i];
+            }
+            if (deltas[i] > 0) {
+                activeThreads++;
+            }
+        }
+        if (benchmarkThreadTicks != -1) {
+            long benchmarkThreadMillis = toMillis(benchmarkThreadTicks);
+            values[offset + 3] = benchmarkThreadMillis;
+            values[offset + 4] = Math.max(0, userMillis + systemMillis - benchmarkThreadMillis);
+        } else {
+            values[offset + 3] = -1;
+            values[offset + 4] = -1;
+        }
+        values[offset + 5] = count > 0 ? activeThreads : -1;
+        logTopThreads(deltas);
+    }
+
+    private void logTopThreads(long[] deltas) {
+        StringBuilder log = new StringBuilder("CPU time of top threads:");
+        boolean[] logged = new boolean[threads.count];
+        for (int n = 0; n < TOP_THREADS; n++) {
+            int top = -1;
+            for (int i = 0; i < threads.count; i++) {
+                if (!logged[i] && deltas[i] > 0 && (top == -1 || deltas[i] > deltas[top])) {
+                    top = i;
+                }
+            }
+            if (top == -1) {
+                break;
+            }
+            logged[top] = true;
+            // The stat file still holds the contents read for the deltas
+            String name = threads.stats[top].getStatCommand();
+            log.append(n == 0 ? " " : ", ").append(name).append(" (").append(threads.tids[top])
+                    .append("): ").append(toMillis(deltas[top])).append(" ms");
+        }
+        Log.d(Benchmark.TAG, log.toString());
+    }
+
+    private long toMillis(long ticks) {
+        return ticks * 1000 / clockTicksPerSecond;
+    }
+
+    /**
+     * User + system clock ticks of the threads of the process. Listing /proc/self/task allocates, so
+     * it happens after a phase; the start ticks are read from the kept stat files of that listing.
+     */
+    static class Threads {
+        final int[] tids;
+        final ProcFiles.Reader[] stats;
+        final long[] startTicks;
+        final int count;
+
+        private Threads(int[] tids, ProcFiles.Reader[] stats, long[] startTicks, int count) {
+            this.tids = tids;
+            this.stats = stats;
+            this.startTicks = startTicks;
+            this.count = count;
+        }
+
+        /** Lists current threads, keeping stat files and start ticks of threads in previous. */
+        static Threads list(Threads previous) {
+            String[] tasks = new File("/proc/self/task").list();
+            if (tasks == null) {
+                tasks = new String[0];
+            }
+            int[] tids = new int[tasks.length];
+            ProcFiles.Reader[] stats = new ProcFiles.Reader[tasks.length];
+            long[] startTicks = new long[tasks.length];
+            boolean[] kept = new boolean[previous != null ? previous.count : 0];
+            int count = 0;
+            for (String task : tasks) {
+                int tid;
+                try {
+                    tid = Integer.parseInt(task);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                tids[count] = tid;
+                for (int j = 0; j < kept.length; j++) {
+                    if (previous.tids[j] == tid) {
+                        stats[count] = previous.stats[j];
+                        startTicks[count] = previous.startTicks[j];
+                        kept[j] = true;
+                        break;
+                    }
+                }
+                if (stats[count] == null) {
+                    stats[count] = new ProcFiles.Reader("/proc/self/task/" + task + "/stat");
+                }
+                count++;
+            }
+            for (int j = 0; j < kept.length; j++) {
+                if (!kept[j]) {
+                    previous.stats[j].close();
+                }
+            }
+            return new Threads(tids, stats, startTicks, count);
+        }
+
+        /** Does not allocate, except for opening the stat files of new threads once. */
+        void readStartTicks() {
+            for (int i = 0; i < count; i++) {
+                startTicks[i] = Math.max(0, readTicks(stats[i]));
+            }
+        }
+
+        /** Ticks per thread since {@link #readStartTicks()}; -1 for threads that ended. */
+        long[] readDeltas() {
+            long[] deltas = new long[count];
+            for (int i = 0; i < count; i++) {
+                long ticks = readTicks(stats[i]);
+                deltas[i] = ticks != -1 ? ticks - startTicks[i] : -1;
+            }
+            return deltas;
+        }
+
+        private static long readTicks(ProcFiles.Reader stat) {
+            if (!stat.read()) {
+                return -1;
+            }
+            long utime = stat.getStatField(FIELD_UTIME);
+            long stime = stat.getStatField(FIELD_STIME);
+            return utime != -1 && stime != -1 ? utime + stime : -1;
+        }
+    }
+}
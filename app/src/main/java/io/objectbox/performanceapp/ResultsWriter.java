@@ -0,0 +1,217 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.objectbox.performanceapp;
+
+import android.util.Log;
+
+import org.greenrobot.essentials.StringUtils;
+import org.greenrobot.essentials.io.FileUtils;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Appends rows to a TSV results file through a single buffered stream. A header line is written
+ * whenever the columns change. To find the last header of an existing file without reading it, its
+ * offset is kept in a small hidden sidecar file; if that is missing or stale, the file is scanned
+ * backwards from its end.
+ */
+public class ResultsWriter implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char SEPARATOR = '\t';
+    private static final int SCAN_CHUNK_SIZE = 8192;
+
+    private final File file;
+    private final File headerFile;
+    private String[] headers;
+    private long headerOffset = -1;
+    private long length;
+    private Writer writer;
+
+    public ResultsWriter(File file) {
+        this.file = file;
+        this.headerFile = new File(file.getParentFile(), "." + file.getName() + ".header");
+        length = file.length();
+        if (length > 0) {
+            try {
+                if (!readHeaderFile()) {
+                    scanForLastHeader();
+                    if (headers != null) {
+                        writeHeaderFile();
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Could not read headers of " + file, e);
+            }
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Appends the given row, preceded by a header line if the columns differ from the last ones.
+     */
+    public void writeRow(String[] headers, String[] values) throws IOException {
+        if (writer == null) {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), UTF_8));
+        }
+        if (!Arrays.equals(headers, this.headers)) {
+            this.headers = headers;
+            headerOffset = length;
+            write(join(headers));
+            writer.flush();
+            writeHeaderFile();
+        }
+        write(join(values));
+    }
+
+    public void flush() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private void write(String line) throws IOException {
+        writer.write(line);
+        length += line.getBytes(UTF_8).length;
+    }
+
+    private void writeHeaderFile() throws IOException {
+        FileUtils.writeUtf8(headerFile, headerOffset + "\n" + join(headers));
+    }
+
+    static String join(String[] values) {
+        return StringUtils.join(values, String.valueOf(SEPARATOR)) + '\n';
+    }
+
+    /**
+     * Trusts the sidecar only if the results file contains its header line at the given offset.
+     */
+    private boolean readHeaderFile() throws IOException {
+        String contents;
+        try {
+            contents = FileUtils.readUtf8(headerFile);
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+        int newline = contents.indexOf('\n');
+        if (newline == -1) {
+            return false;
+        }
+        long offset;
+        try {
+            offset = Long.parseLong(contents.substring(0, newline));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        String headerLine = contents.substring(newline + 1);
+        // Written by join(), so the line ends with its own newline
+        if (headerLine.endsWith("\n")) {
+            headerLine = headerLine.substring(0, headerLine.length() - 1);
+        }
+        byte[] expected = (headerLine + '\n').getBytes(UTF_8);
+        if (offset < 0 || offset + expected.length > length) {
+            return false;
+        }
+        byte[] actual = new byte[expected.length];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(offset);
+            in.readFully(actual);
+        }
+        if (!Arrays.equals(expected, actual)) {
+            Log.d(Benchmark.TAG, "Ignoring stale " + headerFile);
+            return false;
+        }
+        headers = StringUtils.split(headerLine, SEPARATOR);
+        headerOffset = offset;
+        return true;
+    }
+
+    /**
+     * Reads the file backwards in chunks until the last header line is found; only the tail after the
+     * last header is read.
+     */
+    private void scanForLastHeader() throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long position = length;
+            byte[] carry = new byte[0];
+            while (position > 0) {
+                int chunkSize = (int) Math.min(SCAN_CHUNK_SIZE, position);
+                position -= chunkSize;
+                byte[] bytes = new byte[chunkSize + carry.length];
+                in.seek(position);
+                in.readFully(bytes, 0, chunkSize);
+                System.arraycopy(carry, 0, bytes, chunkSize, carry.length);
+
+                int lineEnd = bytes.length;
+                for (int i = bytes.length - 1; i >= -1; i--) {
+                    boolean lineStart = i == -1 ? position == 0 : bytes[i] == '\n';
+                    if (lineStart) {
+                        String line = new String(bytes, i + 1, lineEnd - i - 1, UTF_8);
+                        String[] columns = StringUtils.split(line, SEPARATOR);
+                        if (isHeader(columns)) {
+                            headers = columns;
+                            headerOffset = position + i + 1;
+                            return;
+                        }
+                        lineEnd = i;
+                    }
+                }
+                carry = Arrays.copyOf(bytes, lineEnd);
+            }
+        }
+    }
+
+    /**
+     * Headers have multiple columns, none of which is a number.
+     */
+    static boolean isHeader(String[] columns) {
+        if (columns.length <= 1) {
+            return false;
+        }
+        for (String value : columns) {
+            try {
+                // Times are written with fractional milliseconds, so also accept decimals
+                Double.parseDouble(value);
+                return false;
+            } catch (NumberFormatException e) {
+                // OK, header candidate
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.objectbox.performanceapp;
+
+import android.os.Process;
+
+/**
+ * Records page faults and scheduling of a phase, which explain latency not visible as CPU time,
+ * e.g. major faults of memory mapped databases reading cold pages. Faults are counted for the whole
+ * process (/proc/self/stat). Context switches and the time spent waiting on a run queue are those of
+ * the benchmark thread: /proc/self/status and /proc/self/schedstat would only cover the main thread,
+ * so /proc/self/task/[tid]/status and schedstat are used instead. -1 if unavailable.
+ */
+public class SchedulerProbe implements PhaseProbe {
+
+    private static final String[] COLUMNS = {
+            "minor-faults", "major-faults", "voluntary-switches", "involuntary-switches", "runqueue-wait-us"
+    };
+
+    // proc(5) field numbers
+    private static final int FIELD_MINFLT = 10;
+    private static final int FIELD_MAJFLT = 12;
+
+    private final long[] startValues = new long[COLUMNS.length];
+    private final ProcFiles.Reader stat = new ProcFiles.Reader("/proc/self/stat");
+    private int tid;
+    private ProcFiles.Reader taskStatus;
+    private ProcFiles.Reader taskSchedstat;
+
+    @Override
+    public String[] columns() {
+        return COLUMNS;
+    }
+
+    @Override
+    public void begin() {
+        int myTid = Process.myTid();
+        if (taskStatus == null || myTid != tid) {
+            if (taskStatus != null) {
+                taskStatus.close();
+                taskSchedstat.close();
+            }
+            tid = myTid;
+            String taskDir = "/proc/self/task/" + myTid;
+            taskStatus = new ProcFiles.Reader(taskDir + "/status");
+            taskSchedstat = new ProcFiles.Reader(taskDir + "/schedstat");
+        }
+        sample(startValues, 0);
+    }
+
+    @Override
+    public void end(long[] values, int offset) {
+        sample(values, offset);
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (values[offset + i] != -1 && startValues[i] != -1) {
+                values[offset + i] -= startValues[i];
+            } else {
+                values[offset + i] = -1;
+            }
+        }
+        if (values[offset + 4] != -1) {
+            values[offset + 4] /= 1000;
+        }
+    }
+
+    /** Does not allocate once the files are open. */
+    private void sample(long[] values, int offset) {
+        stat.read();
+        values[offset] = stat.getStatField(FIELD_MINFLT);
+        values[offset + 1] = stat.getStatField(FIELD_MAJFLT);
+        taskStatus.read();
+        values[offset + 2] = taskStatus.getValue("voluntary_ctxt_switches");
+        values[offset + 3] = taskStatus.getValue("nonvoluntary_ctxt_switches");
+        // "[time on CPU ns] [time waiting on a run queue ns] [timeslices]"
+        taskSchedstat.read();
+        values[offset + 4] = taskSchedstat.getField(1);
+    }
+}
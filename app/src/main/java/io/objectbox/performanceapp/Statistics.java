@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.objectbox.performanceapp;
+
+import java.util.Arrays;
+
+/**
+ * Descriptive statistics of the samples of a phase across runs, including a 95% confidence interval
+ * of the mean and robust outlier detection.
+ */
+public class Statistics {
+
+    /** Two-sided 95% quantiles of Student's t distribution for 1 to 30 degrees of freedom. */
+    private static final double[] T_95 = {
+            12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+            2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+            2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042
+    };
+
+    /** Outlier detection is not meaningful for fewer samples. */
+    private static final int MIN_SAMPLES_FOR_OUTLIERS = 4;
+    /** Modified z-score above which a sample is an outlier (Iglewicz and Hoaglin). */
+    private static final double MAX_MODIFIED_Z_SCORE = 3.5;
+    /** Tukey's fences: samples further than this many IQRs outside the quartiles are outliers. */
+    private static final double IQR_FENCE = 1.5;
+
+    public final int count;
+    public final double mean;
+    public final double median;
+    public final double stdDev;
+    public final double min;
+    public final double max;
+    /** Half width of the 95% confidence interval of the mean; NaN for less than 2 samples. */
+    public final double ciHalfWidth;
+    /** Indexes of the samples considered outliers by the MAD or the IQR criterion. */
+    public final int[] outliers;
+
+    public Statistics(double[] samples) {
+        count = samples.length;
+        if (count == 0) {
+            throw new IllegalArgumentException("No samples");
+        }
+        double[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        min = sorted[0];
+        max = sorted[count - 1];
+        median = quantile(sorted, 0.5);
+
+        double sum = 0;
+        for (double sample : samples) {
+            sum += sample;
+        }
+        mean = sum / count;
+
+        if (count > 1) {
+            double squares = 0;
+            for (double sample : samples) {
+                squares += (sample - mean) * (sample - mean);
+            }
+            stdDev = Math.sqrt(squares / (count - 1));
+            ciHalfWidth = tQuantile95(count - 1) * stdDev / Math.sqrt(count);
+        } else {
+            stdDev = 0;
+            ciHalfWidth = Double.NaN;
+        }
+
+        outliers = findOutliers(samples, sorted);
+    }
+
+    /** Coefficient of variation (stddev / mean). */
+    public double getCv() {
+        return mean != 0 ? stdDev / mean : 0;
+    }
+
+    public double getCiLow() {
+        return mean - ciHalfWidth;
+    }
+
+    public double getCiHigh() {
+        return mean + ciHalfWidth;
+    }
+
+    /** Half width of the confidence interval relative to the mean, e.g. 0.02 for ±2%. */
+    public double getRelativeCiHalfWidth() {
+        return mean != 0 ? ciHalfWidth / mean : Double.NaN;
+    }
+
+    private int[] findOutliers(double[] samples, double[] sorted) {
+        if (count < MIN_SAMPLES_FOR_OUTLIERS) {
+            return new int[0];
+        }
+        double[] deviations = new double[count];
+        for (int i = 0; i < count; i++) {
+            deviations[i] = Math.abs(samples[i] - median);
+        }
+        Arrays.sort(deviations);
+        double mad = quantile(deviations, 0.5);
+
+        double q1 = quantile(sorted, 0.25);
+        double q3 = quantile(sorted, 0.75);
+        double iqr = q3 - q1;
+        double lowerFence = q1 - IQR_FENCE * iqr;
+        double upperFence = q3 + IQR_FENCE * iqr;
+
+        int[] indexes = new int[count];
+        int outlierCount = 0;
+        for (int i = 0; i < count; i++) {
+            double sample = samples[i];
+            // 0.6745 scales the MAD to the standard deviation of a normal distribution
+            boolean madOutlier = mad > 0 && 0.6745 * Math.abs(sample - median) / mad > MAX_MODIFIED_Z_SCORE;
+            boolean iqrOutlier = iqr > 0 && (sample < lowerFence || sample > upperFence);
+            if (madOutlier || iqrOutlier) {
+                indexes[outlierCount++] = i;
+            }
+        }
+        return Arrays.copyOf(indexes, outlierCount);
+    }
+
+    /** Linear interpolation between closest ranks of the given sorted values. */
+    static double quantile(double[] sorted, double p) {
+        double position = p * (sorted.length - 1);
+        int lower = (int) Math.floor(position);
+        int upper = (int) Math.ceil(position);
+        return sorted[lower] + (sorted[upper] - sorted[lower]) * (position - lower);
+    }
+
+    static double tQuantile95(int degreesOfFreedom) {
+        if (degreesOfFreedom <= T_95.length) {
+            return T_95[degreesOfFreedom - 1];
+        }
+        // Close approximation of the remaining table values converging to the normal distribution
+        return 1.96 + 2.4 / degreesOfFreedom;
+    }
+}
@@ -30,6 +30,7 @@ public class TestType {
     public static final String QUERY_INTEGER_INDEXED = "Query by integer - indexed";
     public static final String QUERY_ID = "Query by ID";
     public static final String DELETE_ALL = "Delete All";
+    public static final String POINT_OPERATIONS = "Point operations (latency)";
 
 
     public static TestType[] ALL = {
@@ -43,8 +44,19 @@ public class TestType {
             new TestType(QUERY_INTEGER_INDEXED, "query-integer-indexed"),
             new TestType(QUERY_ID, "query-id"),
             new TestType(DELETE_ALL, "delete-all"),
+            new TestType(POINT_OPERATIONS, "point-ops"),
     };
 
+    /** The test type with the given {@link #nameShort}, e.g. "crud". */
+    public static TestType byShortName(String nameShort) {
+        for (TestType type : ALL) {
+            if (type.nameShort.equals(nameShort)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown test type: " + nameShort);
+    }
+
     public final String name;
     public final String nameShort;
 
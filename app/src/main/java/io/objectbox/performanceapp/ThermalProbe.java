@@ -0,0 +1,208 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.objectbox.performanceapp;
+
+import android.util.Log;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Samples CPU frequencies and thermal zone temperatures at the end of each phase to detect thermal
+ * throttling, which makes long runs drift. Columns are the maximum temperature of the CPU and SoC
+ * thermal zones (all zones if none is named like that), the lowest current frequency of any core in
+ * percent of its maximum frequency, and whether the phase was throttled: the frequency limit of any
+ * core dropped during the phase or the temperature exceeded the threshold. Frequencies of each core
+ * and temperatures of each zone are logged. Temperatures are in milli °C; -1 if unavailable (e.g.
+ * offline cores).
+ */
+public class ThermalProbe implements PhaseProbe {
+
+    /** Default temperature above which phases are flagged as throttled. */
+    public static final long DEFAULT_THRESHOLD_MILLI_CELSIUS = 60000;
+
+    private static final String CPU_DIR = "/sys/devices/system/cpu";
+    private static final String THERMAL_DIR = "/sys/class/thermal";
+    private static final String[] COLUMNS = {"max-temp-mc", "min-freq-percent", "throttled"};
+
+    private final int[] cores;
+    private final String[] curFreqPaths;
+    private final long[] cpuinfoMaxFreqs;
+    private final ProcFiles.Reader[] maxFreqReaders;
+    private final String[] zoneTypes;
+    private final String[] tempPaths;
+    /** Zones considered for the maximum temperature. */
+    private final boolean[] cpuZones;
+    private final long[] maxFreqStart;
+    private final long thresholdMilliCelsius;
+
+    public ThermalProbe() {
+        this(DEFAULT_THRESHOLD_MILLI_CELSIUS);
+    }
+
+    public ThermalProbe(long thresholdMilliCelsius) {
+        this.thresholdMilliCelsius = thresholdMilliCelsius;
+        cores = listNumbered(CPU_DIR, "cpu");
+        int[] zones = listNumbered(THERMAL_DIR, "thermal_zone");
+        curFreqPaths = new String[cores.length];
+        cpuinfoMaxFreqs = new long[cores.length];
+        maxFreqReaders = new ProcFiles.Reader[cores.length];
+        maxFreqStart = new long[cores.length];
+        for (int i = 0; i < cores.length; i++) {
+            String cpufreq = CPU_DIR + "/cpu" + cores[i] + "/cpufreq/";
+            curFreqPaths[i] = cpufreq + "scaling_cur_freq";
+            cpuinfoMaxFreqs[i] = ProcFiles.readLong(cpufreq + "cpuinfo_max_freq");
+            maxFreqReaders[i] = new ProcFiles.Reader(cpufreq + "scaling_max_freq");
+        }
+        zoneTypes = new String[zones.length];
+        tempPaths = new String[zones.length];
+        cpuZones = new boolean[zones.length];
+        boolean cpuZoneFound = false;
+        for (int i = 0; i < zones.length; i++) {
+            String zoneDir = THERMAL_DIR + "/thermal_zone" + zones[i];
+            String type = ProcFiles.read(zoneDir + "/type");
+            zoneTypes[i] = type != null ? type.trim() : "thermal_zone" + zones[i];
+            tempPaths[i] = zoneDir + "/temp";
+            String lowerCaseType = zoneTypes[i].toLowerCase(Locale.US);
+            cpuZones[i] = lowerCaseType.contains("cpu") || lowerCaseType.contains("soc");
+            cpuZoneFound |= cpuZones[i];
+        }
+        if (!cpuZoneFound) {
+            Arrays.fill(cpuZones, true);
+        }
+    }
+
+    @Override
+    public String[] columns() {
+        return COLUMNS;
+    }
+
+    @Override
+    public void begin() {
+        for (int i = 0; i < maxFreqReaders.length; i++) {
+            maxFreqStart[i] = maxFreqReaders[i].read() ? maxFreqReaders[i].getLong() : -1;
+        }
+    }
+
+    @Override
+    public void end(long[] values, int offset) {
+        StringBuilder log = new StringBuilder("CPU frequencies:");
+        boolean throttled = false;
+        long minFreqPercent = -1;
+        for (int i = 0; i < curFreqPaths.length; i++) {
+            long curFreq = ProcFiles.readLong(curFreqPaths[i]);
+            log.append(i == 0 ? " " : ", ").append("cpu").append(cores[i]).append(' ')
+                    .append(curFreq != -1 ? curFreq / 1000 + " MHz" : "offline");
+            if (curFreq != -1 && cpuinfoMaxFreqs[i] > 0) {
+                long percent = curFreq * 100 / cpuinfoMaxFreqs[i];
+                minFreqPercent = minFreqPercent == -1 ? percent : Math.min(minFreqPercent, percent);
+            }
+            long maxFreq = maxFreqReaders[i].read() ? maxFreqReaders[i].getLong() : -1;
+            if (maxFreq != -1 && maxFreqStart[i] != -1 && maxFreq < maxFreqStart[i]) {
+                throttled = true;
+                log.append(" (limit ").append(maxFreqStart[i] / 1000).append(" -> ").append(maxFreq / 1000)
+                        .append(" MHz)");
+            }
+        }
+        log.append("; temperatures (milli °C):");
+        long maxTemp = -1;
+        for (int i = 0; i < tempPaths.length; i++) {
+            long temp = toMilliCelsius(ProcFiles.readLong(tempPaths[i]));
+            log.append(i == 0 ? " " : ", ").append(zoneTypes[i]).append(' ').append(temp);
+            if (cpuZones[i]) {
+                maxTemp = Math.max(maxTemp, temp);
+            }
+        }
+        Log.d(Benchmark.TAG, log.toString());
+        values[offset] = maxTemp;
+        values[offset + 1] = minFreqPercent;
+        values[offset + 2] = throttled || maxTemp > thresholdMilliCelsius ? 1 : 0;
+    }
+
+    /**
+     * Describes governor and frequency range of all cores for logging, e.g.
+     * "cpu0-3: schedutil 300-1804 MHz, cpu4-7: schedutil 710-2419 MHz".
+     */
+    public static String describeCpus() {
+        StringBuilder description = new StringBuilder();
+        String previous = null;
+        int firstCore = -1;
+        int lastCore = -1;
+        for (int core : listNumbered(CPU_DIR, "cpu")) {
+            String cpufreq = CPU_DIR + "/cpu" + core + "/cpufreq/";
+            String governor = ProcFiles.read(cpufreq + "scaling_governor");
+            String current = governor == null ? "cpufreq unavailable" : governor.trim() + " "
+                    + ProcFiles.readLong(cpufreq + "cpuinfo_min_freq") / 1000 + "-"
+                    + ProcFiles.readLong(cpufreq + "cpuinfo_max_freq") / 1000 + " MHz";
+            if (!current.equals(previous)) {
+                appendCores(description, firstCore, lastCore, previous);
+                previous = current;
+                firstCore = core;
+            }
+            lastCore = core;
+        }
+        appendCores(description, firstCore, lastCore, previous);
+        return description.length() > 0 ? description.toString() : "unavailable";
+    }
+
+    private static void appendCores(StringBuilder description, int firstCore, int lastCore, String cpus) {
+        if (cpus == null) {
+            return;
+        }
+        if (description.length() > 0) {
+            description.append(", ");
+        }
+        description.append("cpu").append(firstCore);
+        if (lastCore != firstCore) {
+            description.append('-').append(lastCore);
+        }
+        description.append(": ").append(cpus);
+    }
+
+    /** Most devices report milli °C, some °C. */
+    private static long toMilliCelsius(long temp) {
+        if (temp == -1) {
+            return -1;
+        }
+        return Math.abs(temp) < 1000 ? temp * 1000 : temp;
+    }
+
+    /** Returns the sorted numbers of entries like "cpu0" or "thermal_zone12" in the given dir. */
+    private static int[] listNumbered(String dir, String prefix) {
+        String[] names = new File(dir).list();
+        if (names == null) {
+            return new int[0];
+        }
+        int[] numbers = new int[names.length];
+        int count = 0;
+        for (String name : names) {
+            if (name.startsWith(prefix) && name.length() > prefix.length()) {
+                try {
+                    numbers[count] = Integer.parseInt(name.substring(prefix.length()));
+                    count++;
+                } catch (NumberFormatException e) {
+                    // E.g. "cpufreq" or "cpuidle"
+                }
+            }
+        }
+        numbers = Arrays.copyOf(numbers, count);
+        Arrays.sort(numbers);
+        return numbers;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.objectbox.performanceapp;
+
+/**
+ * Records operations of one thread within a phase of a {@link Benchmark}, so concurrent workloads
+ * can be timed. Each thread records into its own recorder without any synchronization; the
+ * benchmark merges all recorders when the phase stops.
+ * <p>
+ * Obtain the recorder by calling {@link Benchmark#threadRecorder()} on the worker thread after the
+ * phase was started. All recording must happen before the phase is stopped, e.g. by joining the
+ * worker threads before calling {@link Benchmark#stop()}.
+ */
+public class ThreadRecorder {
+
+    final LatencyHistogram latencies = new LatencyHistogram();
+    final Thread thread;
+    /** Phase (generation) of the benchmark this recorder currently records for. */
+    int generation = -1;
+    long startNanos;
+    long endNanos;
+
+    ThreadRecorder(Thread thread) {
+        this.thread = thread;
+    }
+
+    void reset(int generation) {
+        this.generation = generation;
+        latencies.reset();
+        startNanos = System.nanoTime();
+        endNanos = 0;
+    }
+
+    /** Records the latency of a single operation of this thread. */
+    public void record(long nanos) {
+        latencies.record(nanos);
+    }
+
+    /**
+     * Marks the end of this thread's work; otherwise its throughput is based on the time until the
+     * phase is stopped.
+     */
+    public void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    long getCount() {
+        return latencies.getCount();
+    }
+
+    /** Operations per second of this thread while it was active. */
+    long getOpsPerSecond(long phaseEndNanos) {
+        long end = endNanos != 0 ? endNanos : phaseEndNanos;
+        return opsPerSecond(latencies.getCount(), end - startNanos);
+    }
+
+    static long opsPerSecond(long count, long nanos) {
+        return nanos > 0 ? Math.round(count * 1e9 / nanos) : 0;
+    }
+}
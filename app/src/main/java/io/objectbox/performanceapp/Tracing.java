@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017 ObjectBox Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.objectbox.performanceapp;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Emits systrace/Perfetto sections, so phases can be correlated with a system trace (see
+ * perfetto/README.md). Sections are only available on Android 4.3+, async sections on Android 10+;
+ * on older versions calls are ignored. Names are cut to the maximum length of 127 chars.
+ */
+public class Tracing {
+
+    private static final int MAX_NAME_LENGTH = 127;
+
+    /** Begins a section on the calling thread; sections must be ended in reverse order. */
+    public static void beginSection(String name) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(truncate(name));
+        }
+    }
+
+    public static void endSection() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+    }
+
+    /** Begins an async slice, which may end on another thread; identified by name and cookie. */
+    public static void beginAsyncSection(String name, int cookie) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.beginAsyncSection(truncate(name), cookie);
+        }
+    }
+
+    public static void endAsyncSection(String name, int cookie) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.endAsyncSection(truncate(name), cookie);
+        }
+    }
+
+    private static String truncate(String name) {
+        return name.length() > MAX_NAME_LENGTH ? name.substring(0, MAX_NAME_LENGTH) : name;
+    }
+}
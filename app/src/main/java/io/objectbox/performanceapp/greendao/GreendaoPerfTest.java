@@ -23,6 +23,7 @@ import org.greenrobot.greendao.database.Database;
 import org.greenrobot.greendao.identityscope.IdentityScopeType;
 import org.greenrobot.greendao.query.Query;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -47,6 +48,11 @@ public class GreendaoPerfTest extends PerfTest {
         return "greenDAO";
     }
 
+    @Override
+    public List<File> getDatabaseFiles() {
+        return getSqliteDatabaseFiles(DB_NAME);
+    }
+
     public void setUp(Context context, PerfTestRunner testRunner) {
         super.setUp(context, testRunner);
 
@@ -54,6 +60,7 @@ public class GreendaoPerfTest extends PerfTest {
         daoSession = new DaoMaster(db).newSession(IdentityScopeType.None);
         dao = daoSession.getSimpleEntityDao();
         daoIndexed = daoSession.getSimpleEntityIndexedDao();
+        setStoredEntities(dao.count() + daoIndexed.count());
 
         if (!versionLoggedOnce) {
             Cursor cursor = db.rawQuery("select sqlite_version() AS sqlite_version", null);
@@ -103,6 +110,9 @@ public class GreendaoPerfTest extends PerfTest {
             case TestType.DELETE_ALL:
                 runDeleteAll();
                 break;
+            case TestType.POINT_OPERATIONS:
+                runPointOperations();
+                break;
         }
     }
 
@@ -113,6 +123,7 @@ public class GreendaoPerfTest extends PerfTest {
 
         startBenchmark("delete");
         dao.deleteInTx(loaded);
+        addStoredEntities(-loaded.size());
         stopBenchmark();
 
         startBenchmark("load indexed");
@@ -121,9 +132,11 @@ public class GreendaoPerfTest extends PerfTest {
 
         startBenchmark("delete indexed");
         daoIndexed.deleteInTx(indexedLoaded);
+        addStoredEntities(-indexedLoaded.size());
         stopBenchmark();
 
         boolean deleted = context.deleteDatabase(DB_NAME);
+        setStoredEntities(0);
         log("DB deleted: " + deleted);
     }
 
@@ -131,19 +144,24 @@ public class GreendaoPerfTest extends PerfTest {
         int existentEntities = (int) dao.count();
         List<SimpleEntity> list = new ArrayList<>(numberEntities);
         for (int i = existentEntities; i < existentEntities + numberEntities; i++) {
+            checkCancelled(i);
             list.add(createEntity((long) i));
         }
+        long insertBytes = takeGeneratedBytes(list.size());
         startBenchmark("insert");
         dao.insertInTx(list);
-        stopBenchmark();
+        addStoredEntities(list.size());
+        stopBenchmark(list.size(), insertBytes);
 
         if(toUpdate) {
             for (SimpleEntity entity : list) {
+                checkCancelled();
                 setRandomValues(entity);
             }
+            long updateBytes = takeGeneratedBytes(list.size());
             startBenchmark("update");
             dao.updateInTx(list);
-            stopBenchmark();
+            stopBenchmark(list.size(), updateBytes);
         }
     }
 
@@ -151,19 +169,24 @@ public class GreendaoPerfTest extends PerfTest {
         int existentEntities = (int) daoIndexed.count();
         List<SimpleEntityIndexed> list = new ArrayList<>(numberEntities);
         for (int i = existentEntities; i < existentEntities + numberEntities; i++) {
+            checkCancelled(i);
             list.add(createEntityIndexed((long) i));
         }
+        long insertBytes = takeGeneratedBytes(list.size());
         startBenchmark("insert");
         daoIndexed.insertInTx(list);
-        stopBenchmark();
+        addStoredEntities(list.size());
+        stopBenchmark(list.size(), insertBytes);
 
         if(toUpdate) {
             for (SimpleEntityIndexed entity : list) {
+                checkCancelled();
                 setRandomValues(entity);
             }
+            long updateBytes = takeGeneratedBytes(list.size());
             startBenchmark("update");
             daoIndexed.updateInTx(list);
-            stopBenchmark();
+            stopBenchmark(list.size(), updateBytes);
         }
     }
 
@@ -180,9 +203,11 @@ public class GreendaoPerfTest extends PerfTest {
 
         startBenchmark("delete");
         dao.deleteInTx(reloaded);
+        addStoredEntities(-reloaded.size());
         stopBenchmark();
 
         boolean deleted = context.deleteDatabase(DB_NAME);
+        setStoredEntities(0);
         log("DB deleted: " + deleted);
     }
 
@@ -199,9 +224,11 @@ public class GreendaoPerfTest extends PerfTest {
 
         startBenchmark("delete");
         daoIndexed.deleteInTx(reloaded);
+        addStoredEntities(-reloaded.size());
         stopBenchmark();
 
         boolean deleted = context.deleteDatabase(DB_NAME);
+        setStoredEntities(0);
         log("DB deleted: " + deleted);
     }
 
@@ -233,16 +260,7 @@ public class GreendaoPerfTest extends PerfTest {
 
     protected void accessAll(List<SimpleEntity> list) {
         for (SimpleEntity entity : list) {
-            entity.getId();
-            entity.getSimpleBoolean();
-            entity.getSimpleByte();
-            entity.getSimpleShort();
-            entity.getSimpleInt();
-            entity.getSimpleLong();
-            entity.getSimpleFloat();
-            entity.getSimpleDouble();
-            entity.getSimpleString();
-            entity.getSimpleByteArray();
+            accessAll(entity);
         }
     }
 
@@ -269,19 +287,24 @@ public class GreendaoPerfTest extends PerfTest {
 
     protected void accessAllIndexed(List<SimpleEntityIndexed> list) {
         for (SimpleEntityIndexed entity : list) {
-            entity.getId();
-            entity.getSimpleBoolean();
-            entity.getSimpleByte();
-            entity.getSimpleShort();
-            entity.getSimpleInt();
-            entity.getSimpleLong();
-            entity.getSimpleFloat();
-            entity.getSimpleDouble();
-            entity.getSimpleString();
-            entity.getSimpleByteArray();
+            accessAll(entity);
         }
     }
 
+    private void accessAll(SimpleEntityIndexed entity) {
+        blackhole.consumeId(entity.getId());
+        blackhole.consume(entity.getSimpleBoolean());
+        blackhole.consume(entity.getSimpleByte());
+        blackhole.consume(entity.getSimpleShort());
+        blackhole.consume(entity.getSimpleInt());
+        blackhole.consume(entity.getSimpleLong());
+        blackhole.consume(entity.getSimpleFloat());
+        blackhole.consume(entity.getSimpleDouble());
+        blackhole.consume(entity.getSimpleString());
+        blackhole.consume(entity.getSimpleByteArray());
+        blackhole.endEntity();
+    }
+
     private void runQueryByString() {
         String s = dao.queryBuilder().limit(1).build().list().get(0).getSimpleString();
 
@@ -292,7 +315,7 @@ public class GreendaoPerfTest extends PerfTest {
         accessAll(result);
 
         db.endTransaction();
-        stopBenchmark();
+        stopBenchmark(result.size());
         log("Entities found: " + result.size());
     }
 
@@ -306,7 +329,7 @@ public class GreendaoPerfTest extends PerfTest {
         accessAllIndexed(result);
 
         db.endTransaction();
-        stopBenchmark();
+        stopBenchmark(result.size());
         log("Entities found: " + result.size());
     }
 
@@ -320,7 +343,7 @@ public class GreendaoPerfTest extends PerfTest {
         accessAll(result);
 
         db.endTransaction();
-        stopBenchmark();
+        stopBenchmark(result.size());
         log("Entities found: " + result.size());
     }
 
@@ -334,7 +357,7 @@ public class GreendaoPerfTest extends PerfTest {
         accessAllIndexed(result);
 
         db.endTransaction();
-        stopBenchmark();
+        stopBenchmark(result.size());
         log("Entities found: " + result.size());
     }
 
@@ -345,20 +368,61 @@ public class GreendaoPerfTest extends PerfTest {
         SimpleEntity entity = dao.load(i);
         accessAll(entity);
 
-        stopBenchmark();
+        stopBenchmark(1);
+    }
+
+    private void runPointOperations() {
+        int existentEntities = (int) dao.count();
+        List<SimpleEntity> list = new ArrayList<>(numberEntities);
+        for (int i = existentEntities; i < existentEntities + numberEntities; i++) {
+            checkCancelled(i);
+            list.add(createEntity((long) i));
+        }
+        long insertBytes = takeGeneratedBytes(list.size());
+        startBenchmark("insert");
+        dao.insertInTx(list);
+        addStoredEntities(list.size());
+        stopBenchmark(list.size(), insertBytes);
+
+        int count = pointOperationsCount();
+        int[] indexes = randomIndexes(count, list.size());
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = list.get(indexes[i]).getId();
+            setRandomValues(list.get(indexes[i]));
+        }
+        long putBytes = takeGeneratedBytes(count);
+
+        benchmarkOperations("get", count, i -> accessAll(dao.load(ids[i])));
+
+        long[] gotIds = new long[count];
+        benchmarkConcurrent("get-concurrent", CONCURRENT_THREADS, count, i -> gotIds[i] = dao.load(ids[i]).getId());
+
+        benchmarkOperations("put", count, putBytes, i -> dao.update(list.get(indexes[i])));
+
+        Query<SimpleEntity> query = dao.queryBuilder().where(SimpleEntityDao.Properties.Id.eq(0)).build();
+        benchmarkOperations("query", count, i -> {
+            query.setParameter(0, ids[i]);
+            accessAll(query.unique());
+        });
+
+        boolean deleted = context.deleteDatabase(DB_NAME);
+        setStoredEntities(0);
+        log("DB deleted: " + deleted);
     }
 
     private void accessAll(SimpleEntity entity) {
-        entity.getId();
-        entity.getSimpleBoolean();
-        entity.getSimpleByte();
-        entity.getSimpleShort();
-        entity.getSimpleInt();
-        entity.getSimpleLong();
-        entity.getSimpleFloat();
-        entity.getSimpleDouble();
-        entity.getSimpleString();
-        entity.getSimpleByteArray();
+        blackhole.consumeId(entity.getId());
+        blackhole.consume(entity.getSimpleBoolean());
+        blackhole.consume(entity.getSimpleByte());
+        blackhole.consume(entity.getSimpleShort());
+        blackhole.consume(entity.getSimpleInt());
+        blackhole.consume(entity.getSimpleLong());
+        blackhole.consume(entity.getSimpleFloat());
+        blackhole.consume(entity.getSimpleDouble());
+        blackhole.consume(entity.getSimpleString());
+        blackhole.consume(entity.getSimpleByteArray());
+        blackhole.endEntity();
     }
 
     @Override
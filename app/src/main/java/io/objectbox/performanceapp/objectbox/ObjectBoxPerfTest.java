@@ -18,7 +18,9 @@ package io.objectbox.performanceapp.objectbox;
 
 import android.content.Context;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import io.objectbox.Box;
@@ -42,6 +44,12 @@ public class ObjectBoxPerfTest extends PerfTest {
         return "ObjectBox";
     }
 
+    @Override
+    public List<File> getDatabaseFiles() {
+        // Default directory of BoxStore containing data.mdb and lock.mdb
+        return Collections.singletonList(new File(context.getFilesDir(), "objectbox/objectbox"));
+    }
+
     public void setUp(Context context, PerfTestRunner testRunner) {
         super.setUp(context, testRunner);
         store = MyObjectBox.builder().androidContext(context).build();
@@ -66,7 +74,8 @@ public class ObjectBoxPerfTest extends PerfTest {
 
     @Override
     public void run(TestType type) {
-        log("Current data on db: " + (box.count() + boxIndexed.count()) + " objects");
+        setStoredEntities(box.count() + boxIndexed.count());
+        log("Current data on db: " + getStoredEntities() + " objects");
 
         switch (type.name) {
             case TestType.CREATE_UPDATE:
@@ -99,16 +108,23 @@ public class ObjectBoxPerfTest extends PerfTest {
             case TestType.DELETE_ALL:
                 runDeleteAll();
                 break;
+            case TestType.POINT_OPERATIONS:
+                runPointOperations();
+                break;
         }
     }
 
     public void runDeleteAll(){
+        long countIndexed = boxIndexed.count();
+
         startBenchmark("delete");
         box.removeAll();
+        setStoredEntities(countIndexed);
         stopBenchmark();
 
         startBenchmark("delete indexed");
         boxIndexed.removeAll();
+        setStoredEntities(0);
         stopBenchmark();
 
         store.close();
@@ -119,12 +135,14 @@ public class ObjectBoxPerfTest extends PerfTest {
         List<SimpleEntity> list = prepareAndPutEntities();
 
         for (SimpleEntity entity : list) {
+            checkCancelled();
             setRandomValues(entity);
         }
         if(toUpdate) {
+            long updateBytes = takeGeneratedBytes(list.size());
             startBenchmark("update");
             box.put(list);
-            stopBenchmark();
+            stopBenchmark(list.size(), updateBytes);
         }
     }
 
@@ -132,12 +150,14 @@ public class ObjectBoxPerfTest extends PerfTest {
         List<SimpleEntityIndexed> list = prepareAndPutEntitiesIndexed();
 
         for (SimpleEntityIndexed entity : list) {
+            checkCancelled();
             setRandomValues(entity);
         }
         if(toUpdate) {
+            long updateBytes = takeGeneratedBytes(list.size());
             startBenchmark("update");
             boxIndexed.put(list);
-            stopBenchmark();
+            stopBenchmark(list.size(), updateBytes);
         }
     }
 
@@ -145,12 +165,14 @@ public class ObjectBoxPerfTest extends PerfTest {
         List<SimpleEntity> list = prepareAndPutEntities();
 
         for (SimpleEntity entity : list) {
+            checkCancelled();
             setRandomValues(entity);
 
         }
+        long updateBytes = takeGeneratedBytes(list.size());
         startBenchmark("update");
         box.put(list);
-        stopBenchmark();
+        stopBenchmark(list.size(), updateBytes);
 
         startBenchmark("load");
         List<SimpleEntity> reloaded = box.getAll();
@@ -162,10 +184,12 @@ public class ObjectBoxPerfTest extends PerfTest {
 
         startBenchmark("delete all");
         box.remove(reloaded);
+        addStoredEntities(-reloaded.size());
         stopBenchmark();
 
         store.close();
         store.deleteAllFiles();
+        setStoredEntities(0);
     }
 
     protected void setRandomValues(SimpleEntity entity) {
@@ -191,19 +215,9 @@ public class ObjectBoxPerfTest extends PerfTest {
         return entity;
     }
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
     protected void accessAll(List<SimpleEntity> list) {
         for (SimpleEntity entity : list) {
-            entity.getId();
-            entity.getSimpleBoolean();
-            entity.getSimpleByte();
-            entity.getSimpleShort();
-            entity.getSimpleInt();
-            entity.getSimpleLong();
-            entity.getSimpleFloat();
-            entity.getSimpleDouble();
-            entity.getSimpleString();
-            entity.getSimpleByteArray();
+            accessAll(entity);
         }
     }
 
@@ -211,11 +225,13 @@ public class ObjectBoxPerfTest extends PerfTest {
         List<SimpleEntityIndexed> list = prepareAndPutEntitiesIndexed();
 
         for (SimpleEntityIndexed entity : list) {
+            checkCancelled();
             setRandomValues(entity);
         }
+        long updateBytes = takeGeneratedBytes(list.size());
         startBenchmark("update");
         boxIndexed.put(list);
-        stopBenchmark();
+        stopBenchmark(list.size(), updateBytes);
 
         startBenchmark("load");
         List<SimpleEntityIndexed> reloaded = boxIndexed.getAll();
@@ -227,6 +243,7 @@ public class ObjectBoxPerfTest extends PerfTest {
 
         startBenchmark("delete all");
         boxIndexed.remove(reloaded);
+        addStoredEntities(-reloaded.size());
         stopBenchmark();
     }
 
@@ -248,22 +265,26 @@ public class ObjectBoxPerfTest extends PerfTest {
         return entity;
     }
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
     protected void accessAllIndexed(List<SimpleEntityIndexed> list) {
         for (SimpleEntityIndexed entity : list) {
-            entity.getId();
-            entity.getSimpleBoolean();
-            entity.getSimpleByte();
-            entity.getSimpleShort();
-            entity.getSimpleInt();
-            entity.getSimpleLong();
-            entity.getSimpleFloat();
-            entity.getSimpleDouble();
-            entity.getSimpleString();
-            entity.getSimpleByteArray();
+            accessAll(entity);
         }
     }
 
+    private void accessAll(SimpleEntityIndexed entity) {
+        blackhole.consumeId(entity.getId());
+        blackhole.consume(entity.getSimpleBoolean());
+        blackhole.consume(entity.getSimpleByte());
+        blackhole.consume(entity.getSimpleShort());
+        blackhole.consume(entity.getSimpleInt());
+        blackhole.consume(entity.getSimpleLong());
+        blackhole.consume(entity.getSimpleFloat());
+        blackhole.consume(entity.getSimpleDouble());
+        blackhole.consume(entity.getSimpleString());
+        blackhole.consume(entity.getSimpleByteArray());
+        blackhole.endEntity();
+    }
+
     private void runQueryByString() {
         String s = box.get(1).simpleString;
 
@@ -277,7 +298,7 @@ public class ObjectBoxPerfTest extends PerfTest {
         List<SimpleEntity> result = query.find();
         accessAll(result);
 
-        stopBenchmark();
+        stopBenchmark(result.size());
         log("Entities found: " + result.size());
     }
 
@@ -294,20 +315,23 @@ public class ObjectBoxPerfTest extends PerfTest {
         List<SimpleEntity> result = query.find();
         accessAll(result);
 
-        stopBenchmark();
+        stopBenchmark(result.size());
         log("Entities found: " + result.size());
     }
 
     private List<SimpleEntity> prepareAndPutEntities() {
         List<SimpleEntity> entities = new ArrayList<>(numberEntities);
         for (int i = 0; i < numberEntities; i++) {
+            checkCancelled(i);
             entities.add(createEntity());
         }
 
+        long insertBytes = takeGeneratedBytes(entities.size());
         startBenchmark("insert");
         box.put(entities);
+        addStoredEntities(entities.size());
+        stopBenchmark(entities.size(), insertBytes);
         log("Test data inserted: " + box.count() + " objects");
-        stopBenchmark();
 
         return entities;
     }
@@ -324,7 +348,7 @@ public class ObjectBoxPerfTest extends PerfTest {
         List<SimpleEntityIndexed> result = query.find();
         accessAllIndexed(result);
 
-        stopBenchmark();
+        stopBenchmark(result.size());
         log("Entities found: " + result.size());
     }
 
@@ -341,19 +365,22 @@ public class ObjectBoxPerfTest extends PerfTest {
         List<SimpleEntityIndexed> result = query.find();
         accessAllIndexed(result);
 
-        stopBenchmark();
+        stopBenchmark(result.size());
         log("Entities found: " + result.size());
     }
 
     private List<SimpleEntityIndexed> prepareAndPutEntitiesIndexed() {
         List<SimpleEntityIndexed> entities = new ArrayList<>(numberEntities);
         for (int i = 0; i < numberEntities; i++) {
+            checkCancelled(i);
             entities.add(createEntityIndexed());
         }
 
+        long insertBytes = takeGeneratedBytes(entities.size());
         startBenchmark("insert");
         boxIndexed.put(entities);
-        stopBenchmark();
+        addStoredEntities(entities.size());
+        stopBenchmark(entities.size(), insertBytes);
 
         return entities;
     }
@@ -361,11 +388,55 @@ public class ObjectBoxPerfTest extends PerfTest {
     private void runQueryById() {
         int i = random.nextInt((int) box.count());
 
-        benchmark("query", () -> {
+        benchmark("query", 1, () -> {
             SimpleEntity results = box.get(i);
         });
     }
 
+    private void runPointOperations() {
+        List<SimpleEntity> list = prepareAndPutEntities();
+
+        int count = pointOperationsCount();
+        int[] indexes = randomIndexes(count, list.size());
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = list.get(indexes[i]).getId();
+            setRandomValues(list.get(indexes[i]));
+        }
+        long putBytes = takeGeneratedBytes(count);
+
+        benchmarkOperations("get", count, i -> accessAll(box.get(ids[i])));
+
+        long[] gotIds = new long[count];
+        benchmarkConcurrent("get-concurrent", CONCURRENT_THREADS, count, i -> gotIds[i] = box.get(ids[i]).getId());
+
+        benchmarkOperations("put", count, putBytes, i -> box.put(list.get(indexes[i])));
+
+        Query<SimpleEntity> query = box.query()
+                .equal(SimpleEntity_.id, 0)
+                .parameterAlias("id")
+                .build();
+        benchmarkOperations("query", count, i -> accessAll(query.setParameter("id", ids[i]).findFirst()));
+
+        store.close();
+        store.deleteAllFiles();
+        setStoredEntities(0);
+    }
+
+    private void accessAll(SimpleEntity entity) {
+        blackhole.consumeId(entity.getId());
+        blackhole.consume(entity.getSimpleBoolean());
+        blackhole.consume(entity.getSimpleByte());
+        blackhole.consume(entity.getSimpleShort());
+        blackhole.consume(entity.getSimpleInt());
+        blackhole.consume(entity.getSimpleLong());
+        blackhole.consume(entity.getSimpleFloat());
+        blackhole.consume(entity.getSimpleDouble());
+        blackhole.consume(entity.getSimpleString());
+        blackhole.consume(entity.getSimpleByteArray());
+        blackhole.endEntity();
+    }
+
     @Override
     public void tearDown() {
         store.close();
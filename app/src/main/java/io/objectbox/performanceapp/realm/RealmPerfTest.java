@@ -18,6 +18,7 @@ package io.objectbox.performanceapp.realm;
 
 import android.content.Context;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -39,6 +40,16 @@ public class RealmPerfTest extends PerfTest {
         return "Realm";
     }
 
+    @Override
+    public List<File> getDatabaseFiles() {
+        String path = realm.getPath();
+        List<File> files = new ArrayList<>();
+        for (String suffix : new String[]{"", ".lock", ".management", ".note"}) {
+            files.add(new File(path + suffix));
+        }
+        return files;
+    }
+
     public void setUp(Context context, PerfTestRunner testRunner) {
         super.setUp(context, testRunner);
         Realm.init(context);
@@ -48,6 +59,7 @@ public class RealmPerfTest extends PerfTest {
         realm.close();
         //Realm.deleteRealm(configuration);
         realm = Realm.getDefaultInstance();
+        setStoredEntities(realm.where(SimpleEntity.class).count() + realm.where(SimpleEntityIndexed.class).count());
 
         if (!versionLoggedOnce) {
             //log("Realm " + ??);
@@ -88,6 +100,9 @@ public class RealmPerfTest extends PerfTest {
             case TestType.DELETE_ALL:
                 runDeleteAll();
                 break;
+            case TestType.POINT_OPERATIONS:
+                runPointOperations();
+                break;
         }
     }
 
@@ -96,6 +111,7 @@ public class RealmPerfTest extends PerfTest {
         realm.beginTransaction();
         realm.deleteAll();
         realm.commitTransaction();
+        setStoredEntities(0);
         stopBenchmark();
 
         RealmConfiguration configuration = realm.getConfiguration();
@@ -110,23 +126,28 @@ public class RealmPerfTest extends PerfTest {
         }
         List<SimpleEntity> list = new ArrayList<>(numberEntities);
         for (int i = existentEntities; i < existentEntities + numberEntities; i++) {
+            checkCancelled(i);
             list.add(createEntity(i));
         }
+        long insertBytes = takeGeneratedBytes(list.size());
         startBenchmark("insert");
         realm.beginTransaction();
         realm.insert(list);
         realm.commitTransaction();
-        stopBenchmark();
+        addStoredEntities(list.size());
+        stopBenchmark(list.size(), insertBytes);
 
         if(toUpdate) {
             for (SimpleEntity entity : list) {
+                checkCancelled();
                 setRandomValues(entity);
             }
+            long updateBytes = takeGeneratedBytes(list.size());
             startBenchmark("update");
             realm.beginTransaction();
             realm.insertOrUpdate(list);
             realm.commitTransaction();
-            stopBenchmark();
+            stopBenchmark(list.size(), updateBytes);
         }
     }
 
@@ -138,23 +159,28 @@ public class RealmPerfTest extends PerfTest {
 
         List<SimpleEntityIndexed> list = new ArrayList<>(numberEntities);
         for (int i = existentEntities; i < existentEntities + numberEntities; i++) {
+            checkCancelled(i);
             list.add(createEntityIndexed(i));
         }
+        long insertBytes = takeGeneratedBytes(list.size());
         startBenchmark("insert");
         realm.beginTransaction();
         realm.insert(list);
         realm.commitTransaction();
-        stopBenchmark();
+        addStoredEntities(list.size());
+        stopBenchmark(list.size(), insertBytes);
 
         if(toUpdate) {
             for (SimpleEntityIndexed entity : list) {
+                checkCancelled();
                 setRandomValues(entity);
             }
+            long updateBytes = takeGeneratedBytes(list.size());
             startBenchmark("update");
             realm.beginTransaction();
             realm.insertOrUpdate(list);
             realm.commitTransaction();
-            stopBenchmark();
+            stopBenchmark(list.size(), updateBytes);
         }
     }
 
@@ -169,10 +195,12 @@ public class RealmPerfTest extends PerfTest {
         accessAll(reloaded);
         stopBenchmark();
 
+        int deleted = reloaded.size();
         startBenchmark("delete all");
         realm.beginTransaction();
         reloaded.deleteAllFromRealm();
         realm.commitTransaction();
+        addStoredEntities(-deleted);
         stopBenchmark();
     }
 
@@ -211,10 +239,12 @@ public class RealmPerfTest extends PerfTest {
         accessAllIndexed(reloaded);
         stopBenchmark();
 
+        int deleted = reloaded.size();
         startBenchmark("delete");
         realm.beginTransaction();
         reloaded.deleteAllFromRealm();
         realm.commitTransaction();
+        addStoredEntities(-deleted);
         stopBenchmark();
     }
 
@@ -244,7 +274,7 @@ public class RealmPerfTest extends PerfTest {
         List<SimpleEntity> result = realm.where(SimpleEntity.class).equalTo("simpleString", s).findAll();
         accessAll(result);
 
-        stopBenchmark();
+        stopBenchmark(result.size());
         log("Entities found: " + result.size());
     }
 
@@ -255,7 +285,7 @@ public class RealmPerfTest extends PerfTest {
         List<SimpleEntityIndexed> result = realm.where(SimpleEntityIndexed.class).equalTo("simpleString", s).findAll();
         accessAllIndexed(result);
 
-        stopBenchmark();
+        stopBenchmark(result.size());
         log("Entities found: " + result.size());
     }
 
@@ -266,7 +296,7 @@ public class RealmPerfTest extends PerfTest {
         List<SimpleEntity> result = realm.where(SimpleEntity.class).equalTo("simpleInt", i).findAll();
         accessAll(result);
 
-        stopBenchmark();
+        stopBenchmark(result.size());
         log("Entities found: " + result.size());
     }
 
@@ -277,7 +307,7 @@ public class RealmPerfTest extends PerfTest {
         List<SimpleEntityIndexed> result = realm.where(SimpleEntityIndexed.class).equalTo("simpleInt", i).findAll();
         accessAllIndexed(result);
 
-        stopBenchmark();
+        stopBenchmark(result.size());
         log("Entities found: " + result.size());
 
     }
@@ -289,55 +319,96 @@ public class RealmPerfTest extends PerfTest {
         SimpleEntity entity = realm.where(SimpleEntity.class).equalTo("id", i).findFirst();
         assert entity != null;
         accessAll(entity);
-        stopBenchmark();
+        stopBenchmark(1);
+    }
+
+    private void runPointOperations() {
+        int existentEntities = (int) realm.where(SimpleEntity.class).count();
+        List<SimpleEntity> list = new ArrayList<>(numberEntities);
+        for (int i = existentEntities; i < existentEntities + numberEntities; i++) {
+            checkCancelled(i);
+            list.add(createEntity(i));
+        }
+        long insertBytes = takeGeneratedBytes(list.size());
+        startBenchmark("insert");
+        realm.beginTransaction();
+        realm.insert(list);
+        realm.commitTransaction();
+        addStoredEntities(list.size());
+        stopBenchmark(list.size(), insertBytes);
+
+        int count = pointOperationsCount();
+        int[] indexes = randomIndexes(count, list.size());
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = list.get(indexes[i]).getId();
+            setRandomValues(list.get(indexes[i]));
+        }
+        long putBytes = takeGeneratedBytes(count);
+
+        benchmarkOperations("get", count, i -> {
+            SimpleEntity entity = realm.where(SimpleEntity.class).equalTo("id", ids[i]).findFirst();
+            assert entity != null;
+            accessAll(entity);
+        });
+
+        benchmarkOperations("put", count, putBytes, i -> {
+            realm.beginTransaction();
+            realm.insertOrUpdate(list.get(indexes[i]));
+            realm.commitTransaction();
+        });
+
+        benchmarkOperations("query", count, i -> {
+            RealmResults<SimpleEntity> result = realm.where(SimpleEntity.class).equalTo("id", ids[i]).findAll();
+            accessAll(result);
+        });
+
+        realm.beginTransaction();
+        realm.delete(SimpleEntity.class);
+        realm.commitTransaction();
+        addStoredEntities(-(existentEntities + list.size()));
     }
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
     private void accessAll(SimpleEntity entity) {
-        entity.getId();
-        entity.getSimpleBoolean();
-        entity.getSimpleByte();
-        entity.getSimpleShort();
-        entity.getSimpleInt();
-        entity.getSimpleLong();
-        entity.getSimpleFloat();
-        entity.getSimpleDouble();
-        entity.getSimpleString();
-        entity.getSimpleByteArray();
+        blackhole.consumeId(entity.getId());
+        blackhole.consume(entity.getSimpleBoolean());
+        blackhole.consume(entity.getSimpleByte());
+        blackhole.consume(entity.getSimpleShort());
+        blackhole.consume(entity.getSimpleInt());
+        blackhole.consume(entity.getSimpleLong());
+        blackhole.consume(entity.getSimpleFloat());
+        blackhole.consume(entity.getSimpleDouble());
+        blackhole.consume(entity.getSimpleString());
+        blackhole.consume(entity.getSimpleByteArray());
+        blackhole.endEntity();
     }
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
     protected void accessAll(List<SimpleEntity> list) {
         for (SimpleEntity entity : list) {
-            entity.getId();
-            entity.getSimpleBoolean();
-            entity.getSimpleByte();
-            entity.getSimpleShort();
-            entity.getSimpleInt();
-            entity.getSimpleLong();
-            entity.getSimpleFloat();
-            entity.getSimpleDouble();
-            entity.getSimpleString();
-            entity.getSimpleByteArray();
+            accessAll(entity);
         }
     }
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
     protected void accessAllIndexed(List<SimpleEntityIndexed> list) {
         for (SimpleEntityIndexed entity : list) {
-            entity.getId();
-            entity.getSimpleBoolean();
-            entity.getSimpleByte();
-            entity.getSimpleShort();
-            entity.getSimpleInt();
-            entity.getSimpleLong();
-            entity.getSimpleFloat();
-            entity.getSimpleDouble();
-            entity.getSimpleString();
-            entity.getSimpleByteArray();
+            accessAll(entity);
         }
     }
 
+    private void accessAll(SimpleEntityIndexed entity) {
+        blackhole.consumeId(entity.getId());
+        blackhole.consume(entity.getSimpleBoolean());
+        blackhole.consume(entity.getSimpleByte());
+        blackhole.consume(entity.getSimpleShort());
+        blackhole.consume(entity.getSimpleInt());
+        blackhole.consume(entity.getSimpleLong());
+        blackhole.consume(entity.getSimpleFloat());
+        blackhole.consume(entity.getSimpleDouble());
+        blackhole.consume(entity.getSimpleString());
+        blackhole.consume(entity.getSimpleByteArray());
+        blackhole.endEntity();
+    }
+
     @Override
     public void tearDown() {
         //RealmConfiguration configuration = realm.getConfiguration();
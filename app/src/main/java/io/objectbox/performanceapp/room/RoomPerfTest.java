@@ -4,6 +4,7 @@ import androidx.room.Room;
 import android.content.Context;
 import android.database.Cursor;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -26,6 +27,11 @@ public class RoomPerfTest extends PerfTest {
         return "Room";
     }
 
+    @Override
+    public List<File> getDatabaseFiles() {
+        return getSqliteDatabaseFiles(DB_NAME);
+    }
+
     @Override
     public void setUp(Context context, PerfTestRunner testRunner) {
         super.setUp(context, testRunner);
@@ -33,6 +39,7 @@ public class RoomPerfTest extends PerfTest {
                 .build();
         dao = db.simpleEntityDao();
         daoIndexed = db.simpleEntityIndexedDao();
+        setStoredEntities(dao.count() + daoIndexed.count());
 
         if (!versionLoggedOnce) {
             try (Cursor cursor = db.query("select sqlite_version() AS sqlite_version", null)) {
@@ -77,6 +84,9 @@ public class RoomPerfTest extends PerfTest {
             case TestType.DELETE_ALL:
                 runDeleteAll();
                 break;
+            case TestType.POINT_OPERATIONS:
+                runPointOperations();
+                break;
         }
     }
 
@@ -87,6 +97,7 @@ public class RoomPerfTest extends PerfTest {
 
         startBenchmark("delete");
         dao.deleteInTx(loaded);
+        addStoredEntities(-loaded.size());
         stopBenchmark();
 
         startBenchmark("load indexed");
@@ -95,9 +106,11 @@ public class RoomPerfTest extends PerfTest {
 
         startBenchmark("delete indexed");
         daoIndexed.deleteInTx(indexedLoaded);
+        addStoredEntities(-indexedLoaded.size());
         stopBenchmark();
 
         boolean deleted = context.deleteDatabase(DB_NAME);
+        setStoredEntities(0);
         log("DB deleted: " + deleted);
     }
 
@@ -105,19 +118,24 @@ public class RoomPerfTest extends PerfTest {
         int existentEntities = dao.count();
         List<SimpleEntity> list = new ArrayList<>(numberEntities);
         for (int i = existentEntities; i < existentEntities + numberEntities; i++) {
+            checkCancelled(i);
             list.add(createEntity((long) i));
         }
+        long insertBytes = takeGeneratedBytes(list.size());
         startBenchmark("insert");
         dao.insertInTx(list);
-        stopBenchmark();
+        addStoredEntities(list.size());
+        stopBenchmark(list.size(), insertBytes);
 
         if(toUpdate) {
             for (SimpleEntity entity : list) {
+                checkCancelled();
                 setRandomValues(entity);
             }
+            long updateBytes = takeGeneratedBytes(list.size());
             startBenchmark("update");
             dao.updateInTx(list);
-            stopBenchmark();
+            stopBenchmark(list.size(), updateBytes);
         }
     }
 
@@ -125,20 +143,25 @@ public class RoomPerfTest extends PerfTest {
 
         List<SimpleEntityIndexed> list = new ArrayList<>(numberEntities);
         for (int i = existentEntities; i < existentEntities + numberEntities; i++) {
+            checkCancelled(i);
             list.add(createEntityIndexed((long) i));
         }
         existentEntities += numberEntities;
+        long insertBytes = takeGeneratedBytes(list.size());
         startBenchmark("insert");
         daoIndexed.insertInTx(list);
-        stopBenchmark();
+        addStoredEntities(list.size());
+        stopBenchmark(list.size(), insertBytes);
 
         if(toUpdate) {
             for (SimpleEntityIndexed entity : list) {
+                checkCancelled();
                 setRandomValues(entity);
             }
+            long updateBytes = takeGeneratedBytes(list.size());
             startBenchmark("update");
             daoIndexed.updateInTx(list);
-            stopBenchmark();
+            stopBenchmark(list.size(), updateBytes);
         }
         list.clear();
     }
@@ -156,6 +179,7 @@ public class RoomPerfTest extends PerfTest {
 
         startBenchmark("delete");
         dao.deleteInTx(reloaded);
+        addStoredEntities(-reloaded.size());
         stopBenchmark();
     }
 
@@ -172,6 +196,7 @@ public class RoomPerfTest extends PerfTest {
 
         startBenchmark("delete");
         daoIndexed.deleteInTx(reloaded);
+        addStoredEntities(-reloaded.size());
         stopBenchmark();
     }
 
@@ -184,7 +209,7 @@ public class RoomPerfTest extends PerfTest {
                 accessAll(result);
                 return result.size();
         });
-        stopBenchmark();
+        stopBenchmark(entitiesFound);
         log("Entities found: " + entitiesFound);
     }
 
@@ -197,7 +222,7 @@ public class RoomPerfTest extends PerfTest {
                 accessAllIndexed(result);
                 return result.size();
         });
-        stopBenchmark();
+        stopBenchmark(entitiesFound);
         log("Entities found: " + entitiesFound);
     }
 
@@ -208,7 +233,7 @@ public class RoomPerfTest extends PerfTest {
         List<SimpleEntity> result = dao.whereSimpleIntEq(i);
         accessAll(result);
 
-        stopBenchmark();
+        stopBenchmark(result.size());
         log("Entities found: " + result.size());
     }
 
@@ -219,7 +244,7 @@ public class RoomPerfTest extends PerfTest {
         List<SimpleEntityIndexed> result = daoIndexed.whereSimpleIntEq(i);
         accessAllIndexed(result);
 
-        stopBenchmark();
+        stopBenchmark(result.size());
         log("Entities found: " + result.size());
     }
 
@@ -230,7 +255,42 @@ public class RoomPerfTest extends PerfTest {
         SimpleEntity entity = dao.load(i);
         accessAll(entity);
 
-        stopBenchmark();
+        stopBenchmark(1);
+    }
+
+    private void runPointOperations() {
+        int existentEntities = dao.count();
+        List<SimpleEntity> list = new ArrayList<>(numberEntities);
+        for (int i = existentEntities; i < existentEntities + numberEntities; i++) {
+            checkCancelled(i);
+            list.add(createEntity((long) i));
+        }
+        long insertBytes = takeGeneratedBytes(list.size());
+        startBenchmark("insert");
+        dao.insertInTx(list);
+        addStoredEntities(list.size());
+        stopBenchmark(list.size(), insertBytes);
+
+        int count = pointOperationsCount();
+        int[] indexes = randomIndexes(count, list.size());
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = list.get(indexes[i]).getId();
+            setRandomValues(list.get(indexes[i]));
+        }
+        long putBytes = takeGeneratedBytes(count);
+
+        benchmarkOperations("get", count, i -> accessAll(dao.load(ids[i])));
+
+        long[] gotIds = new long[count];
+        benchmarkConcurrent("get-concurrent", CONCURRENT_THREADS, count, i -> gotIds[i] = dao.load(ids[i]).getId());
+
+        benchmarkOperations("put", count, putBytes, i -> dao.update(list.get(indexes[i])));
+
+        benchmarkOperations("query", count, i -> accessAll(dao.whereIdEq(ids[i])));
+
+        dao.deleteInTx(list);
+        addStoredEntities(-list.size());
     }
 
     @Override
@@ -239,52 +299,46 @@ public class RoomPerfTest extends PerfTest {
         db.close();
     }
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
     private void accessAll(SimpleEntity entity) {
-        entity.getId();
-        entity.getSimpleBoolean();
-        entity.getSimpleByte();
-        entity.getSimpleShort();
-        entity.getSimpleInt();
-        entity.getSimpleLong();
-        entity.getSimpleFloat();
-        entity.getSimpleDouble();
-        entity.getSimpleString();
-        entity.getSimpleByteArray();
+        blackhole.consumeId(entity.getId());
+        blackhole.consume(entity.getSimpleBoolean());
+        blackhole.consume(entity.getSimpleByte());
+        blackhole.consume(entity.getSimpleShort());
+        blackhole.consume(entity.getSimpleInt());
+        blackhole.consume(entity.getSimpleLong());
+        blackhole.consume(entity.getSimpleFloat());
+        blackhole.consume(entity.getSimpleDouble());
+        blackhole.consume(entity.getSimpleString());
+        blackhole.consume(entity.getSimpleByteArray());
+        blackhole.endEntity();
     }
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
     protected void accessAll(List<SimpleEntity> list) {
         for (SimpleEntity entity : list) {
-            entity.getId();
-            entity.getSimpleBoolean();
-            entity.getSimpleByte();
-            entity.getSimpleShort();
-            entity.getSimpleInt();
-            entity.getSimpleLong();
-            entity.getSimpleFloat();
-            entity.getSimpleDouble();
-            entity.getSimpleString();
-            entity.getSimpleByteArray();
+            accessAll(entity);
         }
     }
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
     protected void accessAllIndexed(List<SimpleEntityIndexed> list) {
         for (SimpleEntityIndexed entity : list) {
-            entity.getId();
-            entity.getSimpleBoolean();
-            entity.getSimpleByte();
-            entity.getSimpleShort();
-            entity.getSimpleInt();
-            entity.getSimpleLong();
-            entity.getSimpleFloat();
-            entity.getSimpleDouble();
-            entity.getSimpleString();
-            entity.getSimpleByteArray();
+            accessAll(entity);
         }
     }
 
+    private void accessAll(SimpleEntityIndexed entity) {
+        blackhole.consumeId(entity.getId());
+        blackhole.consume(entity.getSimpleBoolean());
+        blackhole.consume(entity.getSimpleByte());
+        blackhole.consume(entity.getSimpleShort());
+        blackhole.consume(entity.getSimpleInt());
+        blackhole.consume(entity.getSimpleLong());
+        blackhole.consume(entity.getSimpleFloat());
+        blackhole.consume(entity.getSimpleDouble());
+        blackhole.consume(entity.getSimpleString());
+        blackhole.consume(entity.getSimpleByteArray());
+        blackhole.endEntity();
+    }
+
     private void setRandomValues(SimpleEntity entity) {
         setRandomScalars(entity);
         entity.setSimpleString(randomString());
@@ -23,6 +23,9 @@ public interface SimpleEntityDao {
     @Update
     void updateInTx(List<SimpleEntity> entities);
 
+    @Update
+    void update(SimpleEntity entity);
+
     @Delete
     void deleteInTx(List<SimpleEntity> entities);
 
@@ -32,6 +35,9 @@ public interface SimpleEntityDao {
     @Query("SELECT * FROM simpleentity WHERE simpleString = :value")
     List<SimpleEntity> whereSimpleStringEq(String value);
 
+    @Query("SELECT * FROM simpleentity WHERE id = :id")
+    List<SimpleEntity> whereIdEq(long id);
+
     @Query("SELECT COUNT(*) from simpleentity")
     int count();
 
@@ -29,4 +29,7 @@ public interface SimpleEntityIndexedDao {
     @Query("SELECT * FROM simpleentityindexed WHERE simpleString = :value")
     List<SimpleEntityIndexed> whereSimpleStringEq(String value);
 
+    @Query("SELECT COUNT(*) from simpleentityindexed")
+    int count();
+
 }
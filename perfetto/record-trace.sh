@@ -0,0 +1,31 @@
+#!/bin/sh
+# Records a Perfetto trace while a test runs in the benchmark app.
+# Usage: perfetto/record-trace.sh <trace name, e.g. ObjectBox-crud-100000>
+# Start the script, then start the test in the app; the trace is stopped and pulled to
+# traces/<name>.perfetto-trace once the app logs "Tests done".
+set -e
+
+if [ -z "$1" ]; then
+    echo "Usage: $0 <trace name>"
+    exit 1
+fi
+NAME="$1"
+DIR=$(dirname "$0")
+DEVICE_FILE="/data/misc/perfetto-traces/$NAME.perfetto-trace"
+
+adb logcat -c
+# The config is piped via stdin as perfetto cannot read files outside its own directory on Android 11-
+PID=$(adb shell perfetto --txt -c - -o "$DEVICE_FILE" --background < "$DIR/benchmark.pbtx" | tr -d '\r')
+echo "Tracing (perfetto PID $PID) - start the test in the app now"
+
+adb logcat -s PERF:D | grep -m 1 "Tests done" > /dev/null
+adb shell kill -TERM "$PID"
+# Wait for perfetto to write the trace
+while adb shell kill -0 "$PID" 2> /dev/null; do
+    sleep 1
+done
+
+mkdir -p traces
+adb pull "$DEVICE_FILE" "traces/$NAME.perfetto-trace"
+adb shell rm "$DEVICE_FILE"
+echo "Open traces/$NAME.perfetto-trace at https://ui.perfetto.dev"